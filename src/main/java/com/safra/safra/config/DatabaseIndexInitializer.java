@@ -0,0 +1,109 @@
+package com.safra.safra.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates the indexes that JPA cannot describe with @Index (GiST, partial indexes)
+ * and moves the pooled id sequences past existing rows.
+ * Both run after Hibernate has updated the schema: the sequences while the context
+ * starts, before the web server accepts inserts, the indexes once the application
+ * has started. Every statement is idempotent.
+ */
+@Component
+@Order(0)
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class DatabaseIndexInitializer implements InitializingBean, CommandLineRunner {
+
+    private static final List<String> STATEMENTS = List.of(
+            // Passenger search: ST_DWithin prefilter on both ends, OPEN trips only
+            "CREATE INDEX IF NOT EXISTS idx_trips_open_start_location ON trips USING GIST (start_location) WHERE status = 'OPEN'",
+            "CREATE INDEX IF NOT EXISTS idx_trips_open_end_location ON trips USING GIST (end_location) WHERE status = 'OPEN'",
+            "CREATE INDEX IF NOT EXISTS idx_trips_open_start_time ON trips (start_time) WHERE status = 'OPEN'",
+            // Reminder sweep: trips by status and departure time
+            "CREATE INDEX IF NOT EXISTS idx_trips_status_start_time ON trips (status, start_time)",
+            // Driver rating feed and summary: driver's trips, then their ratings newest first
+            "CREATE INDEX IF NOT EXISTS idx_trips_driver ON trips (driver_id)",
+            "CREATE INDEX IF NOT EXISTS idx_trip_ratings_trip_created ON trip_ratings (trip_id, created_at DESC, id DESC)",
+            // Expiry jobs: only rows that can still expire are scanned
+            "CREATE INDEX IF NOT EXISTS idx_subscriptions_active_end_date ON subscriptions (end_date) WHERE is_active = true",
+            "CREATE INDEX IF NOT EXISTS idx_stripe_payments_pending_expiry ON stripe_payments (expires_at) WHERE status = 'PENDING'",
+            // Seat booking: a passenger is on a trip at most once (duplicate rows from before the index are dropped)
+            onlyIfIndexMissing("uk_trip_passengers_trip_user",
+                    "DELETE FROM trip_passengers a USING trip_passengers b " +
+                            "WHERE a.trip_id = b.trip_id AND a.user_id = b.user_id AND a.ctid > b.ctid"),
+            "CREATE UNIQUE INDEX IF NOT EXISTS uk_trip_passengers_trip_user ON trip_passengers (trip_id, user_id)",
+            // Notification outbox: only due rows are ever scanned
+            "CREATE INDEX IF NOT EXISTS idx_notification_outbox_due ON notification_outbox (next_attempt_at) WHERE status = 'PENDING'",
+            // Stripe webhook queue: only unprocessed events are scanned
+            "CREATE INDEX IF NOT EXISTS idx_stripe_webhook_events_due ON stripe_webhook_events (next_attempt_at) WHERE status = 'PENDING'",
+            // Ride request inboxes: driver side per trip (also the pending count), passenger side in inbox order
+            "CREATE INDEX IF NOT EXISTS idx_ride_requests_trip_status ON ride_requests (trip_id, status, created_at DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_ride_requests_passenger_inbox ON ride_requests " +
+                    "(passenger_id, (status = 'PENDING') DESC, created_at DESC, id DESC)",
+            // Ride requests: a passenger has at most one live (pending or accepted) request per trip.
+            // Older duplicates are cancelled first, keeping the accepted one if any, else the newest
+            onlyIfIndexMissing("uk_ride_requests_active",
+                    "UPDATE ride_requests SET status = 'CANCELLED', updated_at = now() WHERE id IN (" +
+                            "SELECT id FROM (SELECT id, row_number() OVER (PARTITION BY trip_id, passenger_id " +
+                            "ORDER BY (status = 'ACCEPTED') DESC, created_at DESC, id DESC) AS rn " +
+                            "FROM ride_requests WHERE status IN ('PENDING', 'ACCEPTED')) ranked WHERE rn > 1)"),
+            "CREATE UNIQUE INDEX IF NOT EXISTS uk_ride_requests_active ON ride_requests (trip_id, passenger_id) " +
+                    "WHERE status IN ('PENDING', 'ACCEPTED')"
+    );
+
+    // Pooled sequences (allocation 50): rows inserted before the switch from IDENTITY
+    // keep their ids, new blocks start after the highest one (never moves a sequence back)
+    private static final List<String> SEQUENCE_STATEMENTS = List.of(
+            sequenceAfterMaxId("trip_seq", "trips"),
+            sequenceAfterMaxId("ride_request_seq", "ride_requests"),
+            sequenceAfterMaxId("car_seq", "cars")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Wraps a cleanup statement so it only runs while the unique index it prepares for does not exist yet
+     */
+    private static String onlyIfIndexMissing(String index, String statement) {
+        return "DO $$ BEGIN IF NOT EXISTS (SELECT 1 FROM pg_indexes WHERE indexname = '" + index + "') THEN " +
+                "EXECUTE $sql$" + statement + "$sql$; END IF; END $$";
+    }
+
+    private static String sequenceAfterMaxId(String sequence, String table) {
+        return "SELECT setval('" + sequence + "', GREATEST((SELECT COALESCE(MAX(id), 0) FROM " + table + "), " +
+                "(SELECT last_value FROM " + sequence + "), 1))";
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        execute(SEQUENCE_STATEMENTS);
+        log.info("📇 Id sequences verified ({} statements)", SEQUENCE_STATEMENTS.size());
+    }
+
+    @Override
+    public void run(String... args) {
+        execute(STATEMENTS);
+        log.info("📇 Database indexes verified ({} statements)", STATEMENTS.size());
+    }
+
+    private void execute(List<String> statements) {
+        for (String statement : statements) {
+            try {
+                jdbcTemplate.execute(statement);
+            } catch (Exception e) {
+                log.warn("⚠ Could not apply database statement [{}]: {}", statement, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.safra.safra.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hubs whose pairwise driving distances are precomputed (see HubDistanceMatrix).
+ * Defaults to the main Tunisian cities; override with osrm.hubs.points[i].name/lat/lng.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "osrm.hubs")
+@Data
+public class HubDistanceConfig {
+    private boolean enabled = true;
+    private String matrixFile = "data/hub-distance-matrix.json";
+
+    // Answer from the matrix only if both local legs together are at most this share of the hub distance
+    private double tolerance = 0.05;
+
+    // Local legs are estimated as straight-line distance times this factor
+    private double localLegFactor = 1.3;
+
+    private List<Hub> points = new ArrayList<>(List.of(
+            new Hub("Tunis", 36.8065, 10.1815),
+            new Hub("La Marsa", 36.8002, 10.1659),
+            new Hub("Ariana", 36.7333, 10.2167),
+            new Hub("Sidi Bou Said", 36.7994, 10.1283),
+            new Hub("Carthage", 36.8511, 10.3241),
+            new Hub("Sousse", 35.8245, 10.6346),
+            new Hub("Kairouan", 35.6712, 10.1008),
+            new Hub("Sfax", 34.7478, 10.7600),
+            new Hub("Hammamet", 36.4513, 10.7308),
+            new Hub("Gabès", 33.8869, 10.0982),
+            new Hub("La Goulette", 36.8927, 10.1877),
+            new Hub("Manouba", 36.7650, 10.2800),
+            new Hub("Monastir", 35.7643, 10.8113),
+            new Hub("Mahdia", 35.5039, 11.0469),
+            new Hub("Béja", 36.4333, 9.7500),
+            new Hub("Jendouba", 36.1667, 8.7000),
+            new Hub("Le Kef", 36.0833, 9.3667),
+            new Hub("Gafsa", 34.4311, 8.7757),
+            new Hub("Tozeur", 33.7072, 8.9692),
+            new Hub("Djerba", 32.9211, 10.4517)
+    ));
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Hub {
+        private String name;
+        private double lat;
+        private double lng;
+    }
+}
@@ -0,0 +1,41 @@
+package com.safra.safra.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Dedicated, bounded pool for push notifications so FCM latency never competes
+ * with the default @Async executor or request threads.
+ */
+@Configuration
+public class NotificationExecutorConfig {
+
+    @Value("${notifications.executor.core-size:2}")
+    private int coreSize;
+
+    @Value("${notifications.executor.max-size:4}")
+    private int maxSize;
+
+    @Value("${notifications.executor.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Bean(name = "notificationExecutor")
+    public Executor notificationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("notification-");
+        // Queue full: the caller sends itself instead of dropping the notification
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+        return executor;
+    }
+}
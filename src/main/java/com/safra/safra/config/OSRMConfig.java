@@ -11,4 +11,11 @@ public class OSRMConfig {
     private String baseUrl = "http://router.project-osrm.org";
     private int connectTimeout = 5000;
     private int readTimeout = 10000;
-}
\ No newline at end of file
+
+    // Route cache: entries are keyed on coordinates rounded to this many decimals (4 ~ 11 m)
+    private int coordinatePrecision = 4;
+    private int cacheMaxEntries = 10000;
+    // Full route bodies are large (geometry + steps): far fewer of them are kept
+    private int routeCacheMaxEntries = 500;
+    private long cacheTtlMinutes = 360;
+}
@@ -0,0 +1,33 @@
+package com.safra.safra.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Small pool that processes stored Stripe webhook events, off the request threads
+ * that receive them.
+ */
+@Configuration
+public class WebhookExecutorConfig {
+
+    @Value("${stripe.webhook.workers:2}")
+    private int workers;
+
+    @Bean(name = "webhookExecutor")
+    public Executor webhookExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        // Workers drain the table in a loop, queued wake-ups beyond one per worker are useless
+        executor.setQueueCapacity(workers);
+        executor.setThreadNamePrefix("stripe-webhook-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+        return executor;
+    }
+}
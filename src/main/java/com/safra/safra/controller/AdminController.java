@@ -6,6 +6,9 @@ import com.safra.safra.entity.Gender;
 import com.safra.safra.entity.Trip;
 import com.safra.safra.entity.User;
 import com.safra.safra.repository.UserRepository;
+import com.safra.safra.security.UserRevocationCache;
+import com.safra.safra.service.HubDistanceMatrix;
+import com.safra.safra.service.OSRMClient;
 import com.safra.safra.service.TripService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -14,6 +17,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
@@ -24,6 +28,12 @@ import java.time.format.DateTimeParseException;
 public class AdminController {
 	@Autowired
 	private TripService tripService;
+	@Autowired
+	private OSRMClient osrmClient;
+	@Autowired
+	private HubDistanceMatrix hubDistanceMatrix;
+	@Autowired
+	private UserRevocationCache revocationCache;
 	private final UserRepository userRepository;
 
 	@Autowired
@@ -70,6 +80,7 @@ public class AdminController {
 			Role newRole = Role.valueOf(req.role.trim().toUpperCase());
 			user.setRole(newRole);
 			userRepository.save(user);
+			revocationCache.evict(user.getId());
 			return ResponseEntity.ok(user);
 		} catch (IllegalArgumentException ex) {
 			return ResponseEntity.badRequest().body("Invalid role: " + req.role);
@@ -142,6 +153,7 @@ public class AdminController {
 		User user = userOpt.get();
 		user.setIsBanned(req.banned);
 		userRepository.save(user);
+		revocationCache.evict(user.getId());
 		return ResponseEntity.ok(user);
 	}
 	@PutMapping("/users/{id}/archive")
@@ -157,6 +169,7 @@ public class AdminController {
 		User user = userOpt.get();
 		user.setIs_archived(req.archived);
 		userRepository.save(user);
+		revocationCache.evict(user.getId());
 		return ResponseEntity.ok(user);
 	}
 
@@ -183,6 +196,7 @@ public class AdminController {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
 		}
 		userRepository.deleteById(id);
+		revocationCache.evict(id);
 		return ResponseEntity.noContent().build();
 	}
 
@@ -246,4 +260,30 @@ public class AdminController {
 		}
 	}
 
+	// OSRM client cache and latency statistics
+	@GetMapping("/osrm/stats")
+	@PreAuthorize("hasRole('ADMIN')")
+	public ResponseEntity<Map<String, Object>> getOsrmStats() {
+		return ResponseEntity.ok(osrmClient.getStats());
+	}
+
+	@DeleteMapping("/osrm/cache")
+	@PreAuthorize("hasRole('ADMIN')")
+	public ResponseEntity<Void> clearOsrmCache() {
+		osrmClient.clearCache();
+		return ResponseEntity.noContent().build();
+	}
+
+	// Recompute the hub distance matrix (after changing osrm.hubs.points or OSRM data)
+	@PostMapping("/osrm/hubs/refresh")
+	@PreAuthorize("hasRole('ADMIN')")
+	public ResponseEntity<?> refreshHubMatrix() {
+		try {
+			hubDistanceMatrix.refresh();
+			return ResponseEntity.ok(Map.of("hubs", hubDistanceMatrix.size()));
+		} catch (RuntimeException e) {
+			return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(Map.of("error", e.getMessage()));
+		}
+	}
+
 }
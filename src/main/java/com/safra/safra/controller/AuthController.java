@@ -8,7 +8,6 @@ import com.safra.safra.repository.UserRepository;
 import com.safra.safra.repository.EmailVerificationTokenRepository;
 import com.safra.safra.service.EmailService;
 import com.safra.safra.security.JwtUtil;
-import com.safra.safra.service.CustomUserDetailsService;
 import com.safra.safra.service.StudentVerificationService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -26,7 +25,6 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class AuthController {
 
-    private final CustomUserDetailsService userDetailsService;
     private final JwtUtil jwtUtil;
     private final PasswordEncoder passwordEncoder;
     private final UserRepository userRepository;
@@ -102,7 +100,7 @@ public class AuthController {
             }
 
             // Generate JWT
-            String token = jwtUtil.generateToken(userDetailsService.loadUserByUsername(user.getEmail()));
+            String token = jwtUtil.generateToken(user);
 
             // Return token + user info
             Map<String, Object> response = new HashMap<>();
@@ -137,7 +135,7 @@ public class AuthController {
             }
 
             // Generate JWT
-            String token = jwtUtil.generateToken(userDetailsService.loadUserByUsername(user.getEmail()));
+            String token = jwtUtil.generateToken(user);
 
             // Return token + user info
             Map<String, Object> response = new HashMap<>();
@@ -19,6 +19,8 @@ import java.util.Map;
  *   POST /api/faker/populate/custom    - Custom population with parameters
  *   GET  /api/faker/stats              - Get current database statistics
  *   DELETE /api/faker/clear            - Clear all data (dangerous!)
+ *   POST /api/faker/benchmark/seed-trips   - Bulk insert trips for search benchmarking
+ *   GET  /api/faker/benchmark/trip-search  - p50/p99 search latency, full scan vs indexed
  */
 @RestController
 @RequestMapping("/api/faker")
@@ -114,4 +116,35 @@ public class FakerController {
             return ResponseEntity.internalServerError().body(result);
         }
     }
+
+    /**
+     * 🌱 Seed benchmark trips (default: 1,000,000)
+     * Inserts trips in JDBC batches on top of the existing users - run a populate first.
+     */
+    @PostMapping("/benchmark/seed-trips")
+    public ResponseEntity<Map<String, Object>> seedBenchmarkTrips(
+            @RequestParam(defaultValue = "1000000") int count) {
+        log.info("🌱 Seeding {} benchmark trips - this may take a while...", count);
+        if (count < 1) count = 1;
+        if (count > 5_000_000) count = 5_000_000;
+
+        try {
+            return ResponseEntity.ok(fakerService.seedBenchmarkTrips(count));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * ⏱️ Benchmark passenger trip search
+     * Reports p50/p99 latency of the previous full-scan query ("before")
+     * and of the index-backed query ("after").
+     */
+    @GetMapping("/benchmark/trip-search")
+    public ResponseEntity<Map<String, Object>> benchmarkTripSearch(
+            @RequestParam(defaultValue = "200") int samples) {
+        if (samples < 10) samples = 10;
+        if (samples > 5000) samples = 5000;
+        return ResponseEntity.ok(fakerService.benchmarkTripSearch(samples));
+    }
 }
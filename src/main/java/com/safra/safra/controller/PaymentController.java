@@ -3,6 +3,8 @@ package com.safra.safra.controller;
 import com.safra.safra.dto.CreatePaymentRequestDTO;
 import com.safra.safra.dto.PaymentResponseDTO;
 import com.safra.safra.service.StripePaymentService;
+import com.safra.safra.service.StripeWebhookService;
+import com.safra.safra.service.SubscriptionExpiryScheduler;
 import com.stripe.exception.SignatureVerificationException;
 import com.stripe.exception.StripeException;
 import lombok.RequiredArgsConstructor;
@@ -23,6 +25,8 @@ import java.util.Map;
 public class PaymentController {
 
     private final StripePaymentService stripePaymentService;
+    private final SubscriptionExpiryScheduler subscriptionExpiryScheduler;
+    private final StripeWebhookService stripeWebhookService;
 
     // ============ PUBLIC ENDPOINTS ============
 
@@ -38,18 +42,22 @@ public class PaymentController {
 
     /**
      * Stripe webhook endpoint
-     * This should be called by Stripe servers
+     * This should be called by Stripe servers. The event is verified and stored, then
+     * processed asynchronously by StripeWebhookWorker; redeliveries are acknowledged
+     * without being stored twice.
      */
     @PostMapping("/stripe/webhook")
     public ResponseEntity<String> handleStripeWebhook(
             @RequestBody String payload,
             @RequestHeader(value = "Stripe-Signature", required = false) String sigHeader) {
         try {
-            stripePaymentService.handleWebhookEvent(payload, sigHeader);
-            return ResponseEntity.ok("Webhook processed");
+            boolean stored = stripeWebhookService.ingest(payload, sigHeader);
+            return ResponseEntity.ok(stored ? "Webhook received" : "Webhook already received");
         } catch (SignatureVerificationException e) {
             log.error("❌ Stripe webhook signature verification failed: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid signature");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (Exception e) {
             log.error("❌ Stripe webhook error: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Webhook processing failed");
@@ -129,11 +137,39 @@ public class PaymentController {
     @PostMapping("/admin/expire-pending")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Map<String, Object>> expirePendingPayments() {
-        int count = stripePaymentService.expirePendingPayments();
+        SubscriptionExpiryScheduler.JobReport report = subscriptionExpiryScheduler.expirePendingPayments();
         return ResponseEntity.ok(Map.of(
                 "message", "Expired pending payments",
+                "count", report.getProcessed(),
+                "durationMs", report.getDurationMs()
+        ));
+    }
+
+    /**
+     * Re-run a stored Stripe webhook event (Admin)
+     */
+    @PostMapping("/admin/webhooks/{stripeEventId}/replay")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> replayWebhookEvent(@PathVariable String stripeEventId) {
+        if (!stripeWebhookService.replay(stripeEventId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Webhook event not found"));
+        }
+        return ResponseEntity.ok(Map.of(
+                "message", "Webhook event queued for replay",
+                "stripeEventId", stripeEventId
+        ));
+    }
+
+    /**
+     * Re-run every Stripe webhook event that ran out of retries (Admin)
+     */
+    @PostMapping("/admin/webhooks/replay-failed")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> replayFailedWebhookEvents() {
+        int count = stripeWebhookService.replayFailed();
+        return ResponseEntity.ok(Map.of(
+                "message", "Failed webhook events queued for replay",
                 "count", count
         ));
     }
 }
-
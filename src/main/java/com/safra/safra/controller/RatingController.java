@@ -1,5 +1,7 @@
 package com.safra.safra.controller;
 
+import com.safra.safra.dto.DriverRatingSummaryDTO;
+import com.safra.safra.dto.RatingFeedPageDTO;
 import com.safra.safra.dto.RatingRequestDTO;
 import com.safra.safra.entity.TripRating;
 import com.safra.safra.service.RatingService;
@@ -54,6 +56,32 @@ public class RatingController {
         return ResponseEntity.ok(ratings);
     }
 
+    /**
+     * Cursor-paginated ratings of a driver, newest first
+     * GET /api/ratings/driver/{driverId}/feed?cursor=...&limit=20
+     */
+    @GetMapping("/driver/{driverId}/feed")
+    public ResponseEntity<?> getDriverRatingsFeed(
+            @PathVariable Long driverId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            RatingFeedPageDTO page = ratingService.getDriverRatingsFeed(driverId, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Star histogram, overall and recent average of a driver
+     * GET /api/ratings/driver/{driverId}/summary
+     */
+    @GetMapping("/driver/{driverId}/summary")
+    public ResponseEntity<DriverRatingSummaryDTO> getDriverRatingSummary(@PathVariable Long driverId) {
+        return ResponseEntity.ok(ratingService.getDriverRatingSummary(driverId));
+    }
+
     @GetMapping("/check")
     public ResponseEntity<?> hasUserRatedTrip(
             @RequestParam Long tripId,
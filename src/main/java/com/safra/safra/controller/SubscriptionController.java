@@ -6,6 +6,7 @@ import com.safra.safra.dto.SubscriptionPurchaseDTO;
 import com.safra.safra.dto.SubscriptionResponseDTO;
 import com.safra.safra.entity.SubscriptionPlan;
 import com.safra.safra.service.StripePaymentService;
+import com.safra.safra.service.SubscriptionExpiryScheduler;
 import com.safra.safra.service.SubscriptionService;
 import com.stripe.exception.StripeException;
 import lombok.RequiredArgsConstructor;
@@ -27,6 +28,7 @@ public class SubscriptionController {
 
     private final SubscriptionService subscriptionService;
     private final StripePaymentService stripePaymentService;
+    private final SubscriptionExpiryScheduler subscriptionExpiryScheduler;
 
     // ============ PUBLIC ENDPOINTS ============
 
@@ -226,10 +228,11 @@ public class SubscriptionController {
     @PostMapping("/admin/deactivate-expired")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Map<String, Object>> deactivateExpired() {
-        int count = subscriptionService.deactivateExpiredSubscriptions();
+        SubscriptionExpiryScheduler.JobReport report = subscriptionExpiryScheduler.expireSubscriptions();
         return ResponseEntity.ok(Map.of(
                 "message", "Deactivated expired subscriptions",
-                "count", count
+                "count", report.getProcessed(),
+                "durationMs", report.getDurationMs()
         ));
     }
 }
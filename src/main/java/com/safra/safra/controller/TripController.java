@@ -3,19 +3,26 @@ package com.safra.safra.controller;
 import com.safra.safra.dto.TripRequestDTO;
 import com.safra.safra.dto.DriverLocationUpdateDTO;
 import com.safra.safra.dto.PriceCalculationRequest;
+import com.safra.safra.dto.PriceQuoteDTO;
+import com.safra.safra.dto.TripSearchPageDTO;
 
 import com.safra.safra.entity.Trip;
+import com.safra.safra.service.DriverLocationStreamService;
 import com.safra.safra.service.FuelPriceCalculationService;
+import com.safra.safra.service.SeatReservationService;
 import com.safra.safra.service.TripService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @RestController
 public class TripController {
@@ -23,6 +30,8 @@ public class TripController {
     TripService tripService;
     @Autowired  // ← ADD THIS ANNOTATION
     FuelPriceCalculationService fuelPriceService;
+    @Autowired
+    SeatReservationService seatReservationService;
 
     @RequestMapping(value = "/trips", method = RequestMethod.GET)
     public List<Trip> getAllTrips() {
@@ -108,6 +117,42 @@ public class TripController {
         return ResponseEntity.ok(trip);
     }
 
+    /**
+     * Hold a seat for a passenger while their request is pending
+     * POST /trips/{tripId}/holds?passengerId=..&minutes=10
+     * The seat is released automatically when the hold expires.
+     */
+    @PostMapping("/trips/{tripId}/holds")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isSelf(#passengerId)")
+    public ResponseEntity<?> holdSeat(
+            @PathVariable Long tripId,
+            @RequestParam Long passengerId,
+            @RequestParam(required = false) Integer minutes) {
+        try {
+            LocalDateTime expiresAt = seatReservationService.hold(tripId, passengerId, minutes);
+            return ResponseEntity.ok(Map.of(
+                    "tripId", tripId,
+                    "passengerId", passengerId,
+                    "expiresAt", expiresAt
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Release a held seat before it expires
+     * DELETE /trips/{tripId}/holds/{passengerId}
+     */
+    @DeleteMapping("/trips/{tripId}/holds/{passengerId}")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isSelf(#passengerId)")
+    public ResponseEntity<?> releaseSeatHold(@PathVariable Long tripId, @PathVariable Long passengerId) {
+        if (!seatReservationService.releaseHold(tripId, passengerId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "No seat hold found"));
+        }
+        return ResponseEntity.ok(Map.of("message", "Seat released"));
+    }
+
     @RequestMapping(value = "/trips/search/user", method = RequestMethod.GET)
     public List<Trip> getSearchedTripsByUser(
             @RequestParam("departureLat") double departureLat,
@@ -122,6 +167,30 @@ public class TripController {
         return trips;
     }
 
+    /**
+     * Paginated passenger search with flat results
+     * GET /trips/search/user/page?departureLat=..&departureLng=..&destinationLat=..&destinationLng=..&cursor=..&limit=20
+     * Pass the returned nextCursor to fetch the following page.
+     */
+    @GetMapping("/trips/search/user/page")
+    public ResponseEntity<?> searchTripsPage(
+            @RequestParam("departureLat") double departureLat,
+            @RequestParam("departureLng") double departureLng,
+            @RequestParam("destinationLat") double destinationLat,
+            @RequestParam("destinationLng") double destinationLng,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        try {
+            TripSearchPageDTO page = tripService.searchTripsPage(
+                    departureLat, departureLng,
+                    destinationLat, destinationLng,
+                    cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @PutMapping("/{tripId}/status")
     public ResponseEntity<?> updateTripStatus(
             @PathVariable Long tripId,
@@ -143,7 +212,7 @@ public class TripController {
             @PathVariable Long tripId,
             @RequestBody DriverLocationUpdateDTO locationUpdate) {
         try {
-            Trip updatedTrip = tripService.updateDriverLocation(
+            DriverLocationUpdateDTO location = tripService.updateDriverLocation(
                     tripId,
                     locationUpdate.getLatitude(),
                     locationUpdate.getLongitude(),
@@ -151,7 +220,7 @@ public class TripController {
                     locationUpdate.getBearing(),
                     locationUpdate.getAccuracy()
             );
-            return ResponseEntity.ok(updatedTrip);
+            return ResponseEntity.ok(location);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -172,6 +241,39 @@ public class TripController {
         }
     }
 
+    /**
+     * Stream driver's location as Server-Sent Events (for passengers)
+     * GET /api/trips/{tripId}/location/stream
+     * Emits a "location" event per driver update; slow clients only get the latest one.
+     * 429 when the trip already has the maximum number of streams.
+     */
+    @GetMapping(value = "/{tripId}/location/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamDriverLocation(@PathVariable Long tripId) {
+        try {
+            return ResponseEntity.ok(tripService.streamDriverLocation(tripId));
+        } catch (DriverLocationStreamService.TooManySubscribersException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Recorded GPS track of a trip as a GeoJSON Feature (LineString)
+     * GET /api/trips/{tripId}/track
+     */
+    @GetMapping("/{tripId}/track")
+    public ResponseEntity<?> getTripTrack(@PathVariable Long tripId) {
+        if (!tripService.existsById(tripId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Trip not found"));
+        }
+        StreamingResponseBody body = out -> tripService.writeTripTrack(tripId, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/geo+json"))
+                .body(body);
+    }
+
     /**
      * Start navigation
      * POST /api/trips/{tripId}/start-navigation
@@ -217,17 +319,12 @@ public class TripController {
     /**
      * Find active trips for tracking
      * GET /api/trips/active
+     * Returns the latest driver location of every ACTIVE trip from the in-memory store.
      */
     @GetMapping("/active")
     public ResponseEntity<?> getActiveTrips() {
         try {
-            // You might want to add a repository method to find active trips
-            List<Trip> allTrips = tripService.getAllTrips();
-            List<Trip> activeTrips = allTrips.stream()
-                    .filter(trip -> "ACTIVE".equals(trip.getStatus()))
-                    .filter(trip -> trip.getCurrentDriverLat() != null)
-                    .collect(Collectors.toList());
-            return ResponseEntity.ok(activeTrips);
+            return ResponseEntity.ok(tripService.getActiveTripLocations());
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -265,8 +362,21 @@ public class TripController {
             ));
         }
     }
-}
-
-
-
 
+    /**
+     * Price ranges for many origin/destination pairs in one call
+     * POST /trips/calculate-price/batch
+     * Distances are resolved with at most one OSRM /table request.
+     */
+    @PostMapping("/trips/calculate-price/batch")
+    public ResponseEntity<?> calculatePriceBatch(@RequestBody List<PriceCalculationRequest> requests) {
+        try {
+            List<PriceQuoteDTO> quotes = fuelPriceService.quoteBatch(requests);
+            return ResponseEntity.ok(quotes);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", e.getMessage()
+            ));
+        }
+    }
+}
@@ -2,7 +2,9 @@ package com.safra.safra.controller;
 
 import com.safra.safra.dto.PasswordChangeDTO;
 import com.safra.safra.dto.ProfileUpdateDTO;
+import com.safra.safra.dto.RideRequestBatchDTO;
 import com.safra.safra.dto.RideRequestDTO;
+import com.safra.safra.entity.RequestStatus;
 import com.safra.safra.entity.RideRequest;
 import com.safra.safra.entity.Trip;
 import com.safra.safra.entity.User;
@@ -58,7 +60,25 @@ public class UserController {
     }
 
     @PostMapping("/request")
-    public ResponseEntity<?> requestRide(@RequestBody RideRequestDTO dto) {
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isSelf(#dto.passengerId)")
+    public ResponseEntity<?> requestRide(
+            @RequestBody RideRequestDTO dto,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+
+        if (idempotencyKey != null && idempotencyKey.length() > 100) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Idempotency-Key must be at most 100 characters"));
+        }
+
+        // Retries (same key, or a request that is still live) get the original request back
+        RideRequest existing;
+        try {
+            existing = rideRequestService.findExistingRequest(dto.getTripId(), dto.getPassengerId(), idempotencyKey);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+        if (existing != null) {
+            return ResponseEntity.ok(existing);
+        }
 
         Trip trip = tripRepository.findById(dto.getTripId())
                 .orElseThrow(() -> new RuntimeException("Trip not found"));
@@ -68,29 +88,94 @@ public class UserController {
 
         RideRequest request = dto.toEntity(trip, passenger);
 
-        request = rideRequestService.createRequest(request);
+        request = rideRequestService.createRequest(request, idempotencyKey);
 
         return ResponseEntity.ok(request);
     }
 
     @PostMapping("/{id}/accept")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isRequestTripDriver(#id)")
     public ResponseEntity<?> accept(@PathVariable Long id) {
         return ResponseEntity.ok(rideRequestService.acceptRideRequest(id));
     }
 
     @PostMapping("/{id}/reject")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isRequestTripDriver(#id)")
     public ResponseEntity<?> reject(@PathVariable Long id) {
         return ResponseEntity.ok(rideRequestService.rejectRideRequest(id));
     }
 
+    /**
+     * Accept and reject several requests of one trip at once
+     */
+    @PostMapping("/trips/{tripId}/requests/batch")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isTripDriver(#tripId)")
+    public ResponseEntity<?> decideRequests(@PathVariable Long tripId, @RequestBody RideRequestBatchDTO dto) {
+        try {
+            return ResponseEntity.ok(rideRequestService.decideRideRequests(tripId, dto));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/driver/{driverId}/requests")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isSelf(#driverId)")
     public ResponseEntity<?> getDriverRideRequests(@PathVariable Long driverId) {
         return ResponseEntity.ok(rideRequestService.getRequestsForDriver(driverId));
     }
     @GetMapping("passenger/{passengerId}/requests")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isSelf(#passengerId)")
     public ResponseEntity<?> getPassengerRideRequests(@PathVariable Long passengerId) {
         return ResponseEntity.ok(rideRequestService.getRequestsForPassenger(passengerId));
     }
+    /**
+     * Requests on the driver's trips, pending first then newest first
+     * GET /api/users/driver/{driverId}/requests/inbox?status=PENDING&cursor=...&limit=20
+     */
+    @GetMapping("/driver/{driverId}/requests/inbox")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isSelf(#driverId)")
+    public ResponseEntity<?> getDriverInbox(
+            @PathVariable Long driverId,
+            @RequestParam(required = false) RequestStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(rideRequestService.getDriverInbox(driverId, status, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Requests made by the passenger, pending first then newest first
+     * GET /api/users/passenger/{passengerId}/requests/inbox?status=PENDING&cursor=...&limit=20
+     */
+    @GetMapping("/passenger/{passengerId}/requests/inbox")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isSelf(#passengerId)")
+    public ResponseEntity<?> getPassengerInbox(
+            @PathVariable Long passengerId,
+            @RequestParam(required = false) RequestStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(rideRequestService.getPassengerInbox(passengerId, status, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Pending request count for the driver's badge (cached for a few seconds)
+     */
+    @GetMapping("/driver/{driverId}/requests/pending-count")
+    @PreAuthorize("hasRole('ADMIN') or @userSecurity.isSelf(#driverId)")
+    public ResponseEntity<?> getDriverPendingCount(@PathVariable Long driverId) {
+        return ResponseEntity.ok(Map.of(
+                "driverId", driverId,
+                "pending", rideRequestService.getPendingCountForDriver(driverId)
+        ));
+    }
+
     @PutMapping("/{userId}/fcm-token")
     public ResponseEntity<?> updateFcmToken(
             @PathVariable Long userId,
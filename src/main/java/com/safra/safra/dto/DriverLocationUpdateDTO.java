@@ -5,6 +5,7 @@ import java.time.LocalDateTime;
 
 @Data
 public class DriverLocationUpdateDTO {
+    private Long tripId;       // set on responses and streamed events
     private Double latitude;
     private Double longitude;
     private Double speed;      // optional - in km/h
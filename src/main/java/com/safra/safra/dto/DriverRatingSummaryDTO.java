@@ -0,0 +1,26 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Rating overview for a driver profile: overall average, 1-5 star histogram and
+ * the average over the recent window
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DriverRatingSummaryDTO {
+    private Long driverId;
+    private Double averageRating;
+    private Integer totalRatings;
+    private Map<Integer, Long> histogram; // stars -> count, keys 1..5
+    private Double recentAverage;
+    private Long recentCount;
+    private Integer recentWindowDays;
+}
@@ -0,0 +1,22 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry of a batch price quote, same fields as /trips/calculate-price
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PriceQuoteDTO {
+    private double distance; // km
+    private double suggestedPrice;
+    private double minPrice;
+    private double maxPrice;
+    private String fuelType;
+    private String distanceSource; // "hub", "osrm" or "haversine"
+}
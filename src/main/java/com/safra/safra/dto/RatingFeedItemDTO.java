@@ -0,0 +1,39 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Flat rating for profile feeds - no trip/passenger entity graph
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RatingFeedItemDTO {
+    private Long ratingId;
+    private Long tripId;
+    private Integer rating;
+    private String comment;
+    private LocalDateTime createdAt;
+    private Long passengerId;
+    private String passengerName;
+    private String passengerPicture;
+
+    public static RatingFeedItemDTO fromProjection(RatingFeedProjection row) {
+        return RatingFeedItemDTO.builder()
+                .ratingId(row.getRatingId())
+                .tripId(row.getTripId())
+                .rating(row.getRating())
+                .comment(row.getComment())
+                .createdAt(row.getCreatedAt())
+                .passengerId(row.getPassengerId())
+                .passengerName(row.getPassengerName())
+                .passengerPicture(row.getPassengerPicture())
+                .build();
+    }
+}
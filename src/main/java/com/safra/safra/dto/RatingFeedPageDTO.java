@@ -0,0 +1,53 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One page of a driver's ratings, newest first. Pass nextCursor back to get the
+ * next page; it is null on the last page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RatingFeedPageDTO {
+    private List<RatingFeedItemDTO> ratings;
+    private String nextCursor;
+    private boolean hasMore;
+
+    /**
+     * Keyset position in the feed ordering: (created_at, rating id), both descending.
+     * Encoded as "createdAt_id" with an ISO timestamp.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Cursor {
+        public static final Cursor FIRST = new Cursor(LocalDateTime.of(9999, 12, 31, 0, 0), Long.MAX_VALUE);
+
+        private final LocalDateTime createdAt;
+        private final long ratingId;
+
+        public String encode() {
+            return createdAt + "_" + ratingId;
+        }
+
+        public static Cursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return FIRST;
+            }
+            try {
+                String[] parts = cursor.split("_");
+                return new Cursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid rating cursor: " + cursor);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.safra.safra.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Row returned by TripRatingRepository.findDriverRatingsPage (quoted aliases)
+ */
+public interface RatingFeedProjection {
+    Long getRatingId();
+    Long getTripId();
+    Integer getRating();
+    String getComment();
+    LocalDateTime getCreatedAt();
+    Long getPassengerId();
+    String getPassengerName();
+    String getPassengerPicture();
+}
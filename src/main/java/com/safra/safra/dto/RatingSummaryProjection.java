@@ -0,0 +1,16 @@
+package com.safra.safra.dto;
+
+/**
+ * Row returned by TripRatingRepository.summarizeDriverRatings (quoted aliases)
+ */
+public interface RatingSummaryProjection {
+    Long getTotal();
+    Long getRatingSum();
+    Long getStars1();
+    Long getStars2();
+    Long getStars3();
+    Long getStars4();
+    Long getStars5();
+    Long getRecentCount();
+    Double getRecentAverage();
+}
@@ -0,0 +1,20 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Driver decisions on several ride requests of one trip
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RideRequestBatchDTO {
+    private List<Long> accept;
+    private List<Long> reject;
+}
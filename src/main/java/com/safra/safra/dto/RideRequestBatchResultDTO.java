@@ -0,0 +1,24 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch accept/reject. Skipped requests were not pending, belong to
+ * another trip, or are from a passenger already on the trip.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RideRequestBatchResultDTO {
+    private Long tripId;
+    private List<Long> accepted;
+    private List<Long> rejected;
+    private List<Long> skipped;
+    private Integer availableSeats;
+}
@@ -0,0 +1,53 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Flat ride request for driver/passenger inboxes - no trip/user entity graph
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RideRequestInboxItemDTO {
+    private Long requestId;
+    private String status;
+    private String comment;
+    private LocalDateTime createdAt;
+    private Long tripId;
+    private LocalDateTime tripStartTime;
+    private String tripStatus;
+    private Integer availableSeats;
+    private Float price;
+    private Long passengerId;
+    private String passengerName;
+    private String passengerPicture;
+    private Double passengerRating;
+    private Long driverId;
+    private String driverName;
+
+    public static RideRequestInboxItemDTO fromProjection(RideRequestInboxProjection row) {
+        return RideRequestInboxItemDTO.builder()
+                .requestId(row.getRequestId())
+                .status(row.getStatus())
+                .comment(row.getComment())
+                .createdAt(row.getCreatedAt())
+                .tripId(row.getTripId())
+                .tripStartTime(row.getTripStartTime())
+                .tripStatus(row.getTripStatus())
+                .availableSeats(row.getAvailableSeats())
+                .price(row.getPrice())
+                .passengerId(row.getPassengerId())
+                .passengerName(row.getPassengerName())
+                .passengerPicture(row.getPassengerPicture())
+                .passengerRating(row.getPassengerRating())
+                .driverId(row.getDriverId())
+                .driverName(row.getDriverName())
+                .build();
+    }
+}
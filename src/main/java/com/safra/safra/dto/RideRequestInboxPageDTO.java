@@ -0,0 +1,54 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One page of a ride request inbox: pending requests first, then newest first.
+ * Pass nextCursor back to get the next page; it is null on the last page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RideRequestInboxPageDTO {
+    private List<RideRequestInboxItemDTO> requests;
+    private String nextCursor;
+    private boolean hasMore;
+
+    /**
+     * Keyset position in the inbox ordering: (is pending, created_at, request id), all
+     * descending. Encoded as "pending_createdAt_id" with pending as 1/0 and an ISO timestamp.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Cursor {
+        public static final Cursor FIRST = new Cursor(true, LocalDateTime.of(9999, 12, 31, 0, 0), Long.MAX_VALUE);
+
+        private final boolean pending;
+        private final LocalDateTime createdAt;
+        private final long requestId;
+
+        public String encode() {
+            return (pending ? "1" : "0") + "_" + createdAt + "_" + requestId;
+        }
+
+        public static Cursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return FIRST;
+            }
+            try {
+                String[] parts = cursor.split("_");
+                return new Cursor("1".equals(parts[0]), LocalDateTime.parse(parts[1]), Long.parseLong(parts[2]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid ride request cursor: " + cursor);
+            }
+        }
+    }
+}
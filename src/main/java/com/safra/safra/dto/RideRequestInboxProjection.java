@@ -0,0 +1,24 @@
+package com.safra.safra.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Row returned by the RideRequestRepository inbox queries (quoted aliases)
+ */
+public interface RideRequestInboxProjection {
+    Long getRequestId();
+    String getStatus();
+    String getComment();
+    LocalDateTime getCreatedAt();
+    Long getTripId();
+    LocalDateTime getTripStartTime();
+    String getTripStatus();
+    Integer getAvailableSeats();
+    Float getPrice();
+    Long getPassengerId();
+    String getPassengerName();
+    String getPassengerPicture();
+    Double getPassengerRating();
+    Long getDriverId();
+    String getDriverName();
+}
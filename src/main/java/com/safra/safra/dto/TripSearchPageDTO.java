@@ -0,0 +1,64 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of passenger search results. Pass nextCursor back to get the next page;
+ * it is null on the last page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TripSearchPageDTO {
+    private List<TripSearchResultDTO> results;
+    private String nextCursor;
+    private boolean hasMore;
+
+    /**
+     * Keyset position in the search ordering: (tier, start + end distance, trip id), plus
+     * the path that measured the distance (in-memory index or database): the two compute
+     * distances differently, so a cursor is only compared against its own path.
+     * Encoded as "tier_distance_id_source"; Double.toString round-trips exactly.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Cursor {
+        public static final String INDEX = "i";
+        public static final String DATABASE = "d";
+        public static final Cursor FIRST = new Cursor(0, -1.0, 0L, null);
+
+        private final int tier;
+        private final double totalDistance;
+        private final long tripId;
+        // INDEX, DATABASE, or null on the first page
+        private final String source;
+
+        public String encode() {
+            return tier + "_" + totalDistance + "_" + tripId + "_" + source;
+        }
+
+        public static Cursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return FIRST;
+            }
+            try {
+                String[] parts = cursor.split("_");
+                // Cursors issued before the source was recorded came from the index when it was ready
+                String source = parts.length > 3 ? parts[3] : INDEX;
+                if (!INDEX.equals(source) && !DATABASE.equals(source)) {
+                    throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+                }
+                return new Cursor(Integer.parseInt(parts[0]), Double.parseDouble(parts[1]), Long.parseLong(parts[2]), source);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.safra.safra.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Row returned by TripRepository.searchTripsPage. Aliases in the native query are
+ * quoted so they match these getters exactly.
+ */
+public interface TripSearchProjection {
+    Long getTripId();
+    Double getStartLat();
+    Double getStartLng();
+    Double getEndLat();
+    Double getEndLng();
+    LocalDateTime getStartTime();
+    Integer getAvailableSeats();
+    Float getPrice();
+    Long getDriverId();
+    String getDriverName();
+    Double getDriverRating();
+    Double getStartDistanceM();
+    Double getEndDistanceM();
+    Double getDirectionDiffDegrees();
+    Integer getTier();
+}
@@ -0,0 +1,62 @@
+package com.safra.safra.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Flat passenger search result - no driver/passenger entity graph
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TripSearchResultDTO {
+    private Long tripId;
+    private Double startLat;
+    private Double startLng;
+    private Double endLat;
+    private Double endLng;
+    private LocalDateTime startTime;
+    private Integer availableSeats;
+    private Float price;
+    private Long driverId;
+    private String driverName;
+    private Double driverRating;
+    private Double startDistanceM;
+    private Double endDistanceM;
+    private Double directionDiffDegrees;
+
+    public static TripSearchResultDTO fromProjection(TripSearchProjection row) {
+        return TripSearchResultDTO.builder()
+                .tripId(row.getTripId())
+                .startLat(row.getStartLat())
+                .startLng(row.getStartLng())
+                .endLat(row.getEndLat())
+                .endLng(row.getEndLng())
+                .startTime(row.getStartTime())
+                .availableSeats(row.getAvailableSeats())
+                .price(row.getPrice())
+                .driverId(row.getDriverId())
+                .driverName(row.getDriverName())
+                .driverRating(row.getDriverRating())
+                .startDistanceM(row.getStartDistanceM())
+                .endDistanceM(row.getEndDistanceM())
+                .directionDiffDegrees(row.getDirectionDiffDegrees() == null ? null
+                        : Math.round(row.getDirectionDiffDegrees() * 10.0) / 10.0)
+                .build();
+    }
+
+    /**
+     * Round distances to centimeters for the response. Call only after the page
+     * cursor was computed from the exact values.
+     */
+    public TripSearchResultDTO roundDistances() {
+        if (startDistanceM != null) startDistanceM = Math.round(startDistanceM * 100.0) / 100.0;
+        if (endDistanceM != null) endDistanceM = Math.round(endDistanceM * 100.0) / 100.0;
+        return this;
+    }
+}
@@ -0,0 +1,80 @@
+package com.safra.safra.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A push notification waiting to be delivered. Rows are written in the same
+ * transaction as the change that triggers them and drained by NotificationDispatcher.
+ * The recipient's FCM token is resolved at send time.
+ */
+@Entity
+@Data
+@Table(
+        name = "notification_outbox",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_notification_outbox_key", columnNames = "idempotency_key")
+        }
+)
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class NotificationOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // e.g. TRIP_CANCELLED:42:7 - enqueueing the same key twice is a no-op
+    @Column(name = "idempotency_key", nullable = false, length = 150)
+    private String idempotencyKey;
+
+    @Column(nullable = false, length = 40)
+    private String type;
+
+    @Column(name = "recipient_id", nullable = false)
+    private Long recipientId;
+
+    @Column(nullable = false)
+    private String title;
+
+    @Column(nullable = false, length = 1000)
+    private String body;
+
+    // JSON object of the FCM data payload
+    @Column(columnDefinition = "text")
+    private String data;
+
+    @Column(name = "high_priority", nullable = false)
+    private boolean highPriority;
+
+    @Column(length = 10)
+    private String color;
+
+    // PENDING, SENT, FAILED
+    @Column(nullable = false, length = 10)
+    private String status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
@@ -11,21 +11,34 @@ import java.time.LocalDateTime;
 
 @Entity
 @Data
-@Table(name="ride_requests")
+@Table(name="ride_requests", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_ride_requests_passenger_idempotency_key", columnNames = {"passenger_id", "idempotency_key"})
+})
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@NamedEntityGraph(name = "RideRequest.details", attributeNodes = {
+        @NamedAttributeNode(value = "trip", subgraph = "trip"),
+        @NamedAttributeNode(value = "passenger", subgraph = "user")
+}, subgraphs = {
+        @NamedSubgraph(name = "trip", attributeNodes = {
+                @NamedAttributeNode(value = "driver", subgraph = "user"),
+                @NamedAttributeNode(value = "passengers", subgraph = "user")
+        }),
+        @NamedSubgraph(name = "user", attributeNodes = @NamedAttributeNode("car"))
+})
 public class RideRequest {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ride_request_seq")
+    @SequenceGenerator(name = "ride_request_seq", sequenceName = "ride_request_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "trip_id", nullable = false)
     private Trip trip;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "passenger_id", nullable = false)
     private User passenger;
 
@@ -35,6 +48,10 @@ public class RideRequest {
     @Column
     private String comment;
 
+    // Client-supplied Idempotency-Key of the request that created this row (retries return it)
+    @Column(name = "idempotency_key", length = 100)
+    private String idempotencyKey;
+
     @Column
     private LocalDateTime createdAt;
     @Column
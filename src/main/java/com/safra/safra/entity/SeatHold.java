@@ -0,0 +1,47 @@
+package com.safra.safra.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A seat taken off a trip's available seats for one passenger until expiresAt.
+ * Consumed when the passenger's request is accepted, otherwise released by
+ * SeatReservationService (see there for the seat accounting).
+ */
+@Entity
+@Data
+@Table(
+        name = "seat_holds",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_seat_holds_trip_passenger", columnNames = {"trip_id", "passenger_id"})
+        },
+        indexes = {
+                @Index(name = "idx_seat_holds_expires_at", columnList = "expires_at")
+        }
+)
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SeatHold {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "trip_id", nullable = false)
+    private Long tripId;
+
+    @Column(name = "passenger_id", nullable = false)
+    private Long passengerId;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
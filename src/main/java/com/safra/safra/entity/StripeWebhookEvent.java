@@ -0,0 +1,65 @@
+package com.safra.safra.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A Stripe webhook event as received, after signature verification. The unique
+ * Stripe event id makes redelivered events a no-op; StripeWebhookWorker processes
+ * the rows asynchronously with retries.
+ */
+@Entity
+@Data
+@Table(
+        name = "stripe_webhook_events",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_stripe_webhook_events_event_id", columnNames = "stripe_event_id")
+        }
+)
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StripeWebhookEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // evt_xxx
+    @Column(name = "stripe_event_id", nullable = false, length = 100)
+    private String stripeEventId;
+
+    @Column(nullable = false, length = 100)
+    private String type;
+
+    // Raw JSON body, re-parsed by the worker
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    // PENDING, PROCESSED, FAILED
+    @Column(nullable = false, length = 10)
+    private String status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
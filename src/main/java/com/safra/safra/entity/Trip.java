@@ -1,5 +1,6 @@
 package com.safra.safra.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
 import com.safra.safra.serializer.PointSerializer;
@@ -19,12 +20,22 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+// Users are fetched with their car: the inverse one-to-one would otherwise cost a query per user
+@NamedEntityGraph(name = "Trip.details", attributeNodes = {
+        @NamedAttributeNode(value = "driver", subgraph = "user"),
+        @NamedAttributeNode(value = "passengers", subgraph = "user")
+}, subgraphs = @NamedSubgraph(name = "user", attributeNodes = @NamedAttributeNode("car")))
 public class Trip {
+    // Pooled sequence ids let Hibernate batch inserts (IDENTITY forces one round trip per row)
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "trip_seq")
+    @SequenceGenerator(name = "trip_seq", sequenceName = "trip_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "driver_id",nullable = false)
     private User driver;
 
@@ -53,7 +64,9 @@ public class Trip {
     @Column(nullable = true)
     private Boolean is_archived = false;
 
-    @Column
+    // Only written by SeatReservationService (atomic SQL), never by saving the entity,
+    // so a stale Trip cannot overwrite concurrent bookings
+    @Column(name = "available_seats", updatable = false)
     private int availableSeats;
 
     @Column
@@ -62,26 +75,32 @@ public class Trip {
     @Column
     private String status; // Trip status field
 
-    // Navigation fields
-    @Column(name = "current_driver_lat")
+    // Navigation fields: written by DriverLocationStore's batch flush and cleared by
+    // TripRepository.clearDriverLocation, never by saving the entity (it would write stale values back)
+    @Column(name = "current_driver_lat", updatable = false)
     private Double currentDriverLat;
 
-    @Column(name = "current_driver_lng")
+    @Column(name = "current_driver_lng", updatable = false)
     private Double currentDriverLng;
 
-    @Column(name = "driver_speed")
+    @Column(name = "driver_speed", updatable = false)
     private Double driverSpeed;  // in km/h
 
-    @Column(name = "driver_bearing")
+    @Column(name = "driver_bearing", updatable = false)
     private Float driverBearing; // in degrees
 
-    @Column(name = "last_location_update")
+    @Column(name = "last_location_update", updatable = false)
     private LocalDateTime lastLocationUpdate;
-    @Column(name = "average_rating")
+    // Rating aggregates are only written by atomic SQL increments (RatingService),
+    // never by saving the entity, so concurrent ratings cannot overwrite each other
+    @Column(name = "average_rating", updatable = false)
     private Double averageRating;
 
-    @Column(name = "total_ratings")
+    @Column(name = "total_ratings", updatable = false)
     private Integer totalRatings = 0;
+
+    @Column(name = "rating_sum", updatable = false)
+    private Long ratingSum;
     // Status constants
     public static class Status {
         public static final String OPEN = "OPEN";
@@ -121,16 +140,6 @@ public class Trip {
         }
 
         this.status = normalizedStatus;
-
-        // Optional: Automatically handle some status transitions
-        if (Status.COMPLETED.equals(normalizedStatus) || Status.CANCELED.equals(normalizedStatus)) {
-            // Clear navigation data when trip ends
-            this.currentDriverLat = null;
-            this.currentDriverLng = null;
-            this.driverSpeed = null;
-            this.driverBearing = null;
-            this.lastLocationUpdate = null;
-        }
     }
 
     // Helper method to check if trip is active
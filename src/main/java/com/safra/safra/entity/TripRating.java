@@ -29,6 +29,9 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@NamedEntityGraph(name = "TripRating.passenger",
+        attributeNodes = @NamedAttributeNode(value = "passenger", subgraph = "user"),
+        subgraphs = @NamedSubgraph(name = "user", attributeNodes = @NamedAttributeNode("car")))
 public class TripRating {
 
     @Id
@@ -40,7 +43,7 @@ public class TripRating {
     @JsonBackReference
     private Trip trip;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "passenger_id", nullable = false)
     private User passenger;
 
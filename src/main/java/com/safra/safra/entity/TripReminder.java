@@ -0,0 +1,40 @@
+package com.safra.safra.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marker of a reminder already queued for a trip at a given offset before departure.
+ * The unique (trip_id, offset_minutes) pair makes each reminder exactly-once.
+ */
+@Entity
+@Data
+@Table(
+        name = "trip_reminders",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_trip_reminders_trip_offset", columnNames = {"trip_id", "offset_minutes"})
+        }
+)
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TripReminder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "trip_id", nullable = false)
+    private Long tripId;
+
+    @Column(name = "offset_minutes", nullable = false)
+    private Integer offsetMinutes;
+
+    @Column(name = "sent_at", nullable = false)
+    private LocalDateTime sentAt;
+}
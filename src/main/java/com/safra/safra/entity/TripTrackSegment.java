@@ -0,0 +1,46 @@
+package com.safra.safra.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A window of a trip's GPS track, stored as one compact blob
+ * (see TripTrackCodec for the encoding)
+ */
+@Entity
+@Data
+@Table(
+        name = "trip_track_segments",
+        indexes = {
+                @Index(name = "idx_trip_track_segments_trip", columnList = "trip_id, start_time")
+        }
+)
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TripTrackSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "trip_id", nullable = false)
+    private Long tripId;
+
+    @Column(name = "start_time", nullable = false)
+    private LocalDateTime startTime;
+
+    @Column(name = "end_time", nullable = false)
+    private LocalDateTime endTime;
+
+    @Column(name = "point_count", nullable = false)
+    private Integer pointCount;
+
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] data;
+}
@@ -1,6 +1,7 @@
 package com.safra.safra.entity;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -18,6 +19,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class User {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -44,11 +46,16 @@ public class User {
     private Boolean isBanned;
     @Column
     private LocalDateTime joinDate;
-    @Column(name = "average_rating")
+    // Rating aggregates are only written by atomic SQL increments (RatingService),
+    // never by saving the entity, so concurrent ratings cannot overwrite each other
+    @Column(name = "average_rating", updatable = false)
     private Double averageRating;
 
-    @Column(name = "total_ratings")
+    @Column(name = "total_ratings", updatable = false)
     private Integer totalRatings = 0;
+
+    @Column(name = "rating_sum", updatable = false)
+    private Long ratingSum;
     @Column(name = "fcm_token")
     private String fcmToken;
     public Boolean isIs_archived() {
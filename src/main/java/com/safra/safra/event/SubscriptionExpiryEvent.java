@@ -0,0 +1,26 @@
+package com.safra.safra.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Subscriptions or pending payments of one user that were just expired by
+ * SubscriptionExpiryScheduler. Published inside the transaction that expired them.
+ */
+@Getter
+@RequiredArgsConstructor
+public class SubscriptionExpiryEvent {
+
+    public enum Kind {
+        SUBSCRIPTION,   // active subscription past its end date -> inactive
+        PAYMENT         // pending checkout past its session expiry -> EXPIRED
+    }
+
+    private final Kind kind;
+    private final Long userId;
+    private final List<Long> ids;
+    // Subset of ids expired recently enough to notify the user about
+    private final List<Long> notifiedIds;
+}
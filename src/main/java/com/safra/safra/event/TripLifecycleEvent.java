@@ -0,0 +1,25 @@
+package com.safra.safra.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A batch of trips that went through the same time-driven transition.
+ * Published inside the transaction that changed them; listeners do their side
+ * effects for the whole batch at once.
+ */
+@Getter
+@RequiredArgsConstructor
+public class TripLifecycleEvent {
+
+    public enum Transition {
+        EXPIRED,        // OPEN trip never departed -> CANCELED
+        START_DUE,      // SCHEDULED trip reached its start time, driver reminded to start
+        AUTO_COMPLETED  // ACTIVE trip without location pings for too long -> COMPLETED
+    }
+
+    private final Transition transition;
+    private final List<Long> tripIds;
+}
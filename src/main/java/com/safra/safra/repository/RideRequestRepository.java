@@ -1,14 +1,103 @@
 package com.safra.safra.repository;
 
+import com.safra.safra.dto.RideRequestInboxProjection;
 import com.safra.safra.entity.RideRequest;
 import com.safra.safra.entity.Trip;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface RideRequestRepository extends JpaRepository<RideRequest, Long> {
 
+    String INBOX_SELECT = "SELECT r.id AS \"requestId\", r.status AS \"status\", r.comment AS \"comment\", " +
+            "r.created_at AS \"createdAt\", t.id AS \"tripId\", t.start_time AS \"tripStartTime\", " +
+            "t.status AS \"tripStatus\", t.available_seats AS \"availableSeats\", t.price AS \"price\", " +
+            "p.id AS \"passengerId\", p.name AS \"passengerName\", p.profile_picture AS \"passengerPicture\", " +
+            "p.average_rating AS \"passengerRating\", d.id AS \"driverId\", d.name AS \"driverName\" " +
+            "FROM ride_requests r " +
+            "JOIN trips t ON t.id = r.trip_id " +
+            "JOIN users p ON p.id = r.passenger_id " +
+            "JOIN users d ON d.id = t.driver_id ";
+
+    // Pending first, then newest first; the row comparison is the keyset condition
+    String INBOX_PAGE = "AND r.status IN (:statuses) " +
+            "AND (r.status = 'PENDING', r.created_at, r.id) < (:beforePending, :beforeCreatedAt, :beforeId) " +
+            "ORDER BY (r.status = 'PENDING') DESC, r.created_at DESC, r.id DESC LIMIT :limit";
+
     List<RideRequest> findByTrip_Id(Long tripId);
+    @EntityGraph("RideRequest.details")
     List<RideRequest> findByTrip_Driver_Id(Long tripId);
+    @EntityGraph("RideRequest.details")
     List<RideRequest> findByPassenger_Id(Long passengerId);
+
+    /**
+     * Keyset page of the requests made on a driver's trips, as flat rows
+     */
+    @Query(value = INBOX_SELECT + "WHERE t.driver_id = :driverId " + INBOX_PAGE, nativeQuery = true)
+    List<RideRequestInboxProjection> findDriverInboxPage(
+            @Param("driverId") Long driverId,
+            @Param("statuses") Collection<String> statuses,
+            @Param("beforePending") boolean beforePending,
+            @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+            @Param("beforeId") long beforeId,
+            @Param("limit") int limit
+    );
+
+    /**
+     * Keyset page of the requests made by a passenger, as flat rows
+     */
+    @Query(value = INBOX_SELECT + "WHERE r.passenger_id = :passengerId " + INBOX_PAGE, nativeQuery = true)
+    List<RideRequestInboxProjection> findPassengerInboxPage(
+            @Param("passengerId") Long passengerId,
+            @Param("statuses") Collection<String> statuses,
+            @Param("beforePending") boolean beforePending,
+            @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+            @Param("beforeId") long beforeId,
+            @Param("limit") int limit
+    );
+
+    @Query(value = "SELECT count(*) FROM ride_requests r JOIN trips t ON t.id = r.trip_id " +
+            "WHERE t.driver_id = :driverId AND r.status = 'PENDING'",
+            nativeQuery = true)
+    long countPendingForDriver(@Param("driverId") Long driverId);
+
+    Optional<RideRequest> findByPassenger_IdAndIdempotencyKey(Long passengerId, String idempotencyKey);
+
+    /**
+     * The passenger's live (pending or accepted) request on a trip, if any
+     */
+    @Query(value = "SELECT * FROM ride_requests WHERE trip_id = :tripId AND passenger_id = :passengerId " +
+            "AND status IN ('PENDING', 'ACCEPTED') LIMIT 1",
+            nativeQuery = true)
+    Optional<RideRequest> findActiveRequest(@Param("tripId") Long tripId, @Param("passengerId") Long passengerId);
+
+    @Query("SELECT r.trip.id FROM RideRequest r WHERE r.id = :requestId")
+    Optional<Long> findTripIdById(@Param("requestId") Long requestId);
+
+    /**
+     * Move a request from one status to another only if it is still in the first one.
+     * The row lock makes concurrent transitions of the same request serialize; the
+     * loser updates 0 rows.
+     */
+    @Modifying
+    @Query(value = "UPDATE ride_requests SET status = :to, updated_at = now() WHERE id = :requestId AND status = :from",
+            nativeQuery = true)
+    int transitionStatus(@Param("requestId") Long requestId, @Param("from") String from, @Param("to") String to);
+
+    /**
+     * Cancels the passenger's accepted request once they are off the trip, so it no longer
+     * blocks a new request through uk_ride_requests_active
+     */
+    @Modifying
+    @Query(value = "UPDATE ride_requests SET status = 'CANCELLED', updated_at = now() " +
+            "WHERE trip_id = :tripId AND passenger_id = :passengerId AND status = 'ACCEPTED'",
+            nativeQuery = true)
+    int cancelAcceptedRequest(@Param("tripId") Long tripId, @Param("passengerId") Long passengerId);
 }
@@ -2,6 +2,7 @@ package com.safra.safra.repository;
 
 import com.safra.safra.entity.PaymentStatus;
 import com.safra.safra.entity.StripePayment;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -18,10 +19,15 @@ public interface StripePaymentRepository extends JpaRepository<StripePayment, Lo
 
     List<StripePayment> findByUserId(Long userId);
 
+    @Override
+    @EntityGraph("StripePayment.userAndPlan")
+    List<StripePayment> findAll();
+
     List<StripePayment> findByUserIdAndStatus(Long userId, PaymentStatus status);
 
     List<StripePayment> findByStatus(PaymentStatus status);
 
+    @EntityGraph("StripePayment.userAndPlan")
     @Query("SELECT p FROM StripePayment p WHERE p.user.id = :userId ORDER BY p.createdAt DESC")
     List<StripePayment> findByUserIdOrderByCreatedAtDesc(@Param("userId") Long userId);
 
@@ -1,7 +1,9 @@
 package com.safra.safra.repository;
 
 import com.safra.safra.entity.Subscription;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -11,10 +13,16 @@ import java.util.Optional;
 
 public interface SubscriptionRepository extends JpaRepository<Subscription, Long> {
 
+    @EntityGraph("Subscription.userAndPlan")
     List<Subscription> findByUserId(Long userId);
 
+    @Override
+    @EntityGraph("Subscription.userAndPlan")
+    List<Subscription> findAll();
+
     List<Subscription> findByUserIdAndIsActiveTrue(Long userId);
 
+    @EntityGraph("Subscription.userAndPlan")
     @Query("SELECT s FROM Subscription s WHERE s.user.id = :userId AND s.isActive = true AND s.isArchived = false AND s.endDate > :now")
     Optional<Subscription> findActiveSubscription(@Param("userId") Long userId, @Param("now") LocalDateTime now);
 
@@ -26,4 +34,17 @@ public interface SubscriptionRepository extends JpaRepository<Subscription, Long
 
     @Query("SELECT COUNT(s) > 0 FROM Subscription s WHERE s.user.id = :userId AND s.isActive = true AND s.isArchived = false AND s.endDate > :now")
     boolean hasActiveSubscription(@Param("userId") Long userId, @Param("now") LocalDateTime now);
+
+    /**
+     * Consume one trip of the user's active subscription. The limit is checked in the
+     * same statement, so concurrent calls can never go past it. Returns 0 when there
+     * is no active subscription with trips left.
+     */
+    @Modifying
+    @Query(value = "UPDATE subscriptions SET trips_used = trips_used + 1 " +
+            "WHERE id = (SELECT id FROM subscriptions WHERE user_id = :userId AND is_active = true " +
+            "AND is_archived = false AND end_date > :now ORDER BY end_date DESC LIMIT 1) " +
+            "AND (trip_limit IS NULL OR trips_used < trip_limit)",
+            nativeQuery = true)
+    int useTrip(@Param("userId") Long userId, @Param("now") LocalDateTime now);
 }
@@ -1,12 +1,16 @@
 package com.safra.safra.repository;
 
 
+import com.safra.safra.dto.RatingFeedProjection;
+import com.safra.safra.dto.RatingSummaryProjection;
 import com.safra.safra.entity.TripRating;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +25,7 @@ public interface TripRatingRepository extends JpaRepository<TripRating, Long> {
      * @param tripId The trip ID
      * @return List of ratings for the trip
      */
+    @EntityGraph("TripRating.passenger")
     List<TripRating> findByTripId(Long tripId);
 
     /**
@@ -28,6 +33,7 @@ public interface TripRatingRepository extends JpaRepository<TripRating, Long> {
      * @param passengerId The passenger ID
      * @return List of ratings given by the passenger
      */
+    @EntityGraph("TripRating.passenger")
     List<TripRating> findByPassengerId(Long passengerId);
 
     /**
@@ -35,6 +41,7 @@ public interface TripRatingRepository extends JpaRepository<TripRating, Long> {
      * @param driverId The driver ID
      * @return List of ratings for the driver's trips
      */
+    @EntityGraph("TripRating.passenger")
     List<TripRating> findByTrip_Driver_Id(Long driverId);
 
     /**
@@ -99,4 +106,42 @@ public interface TripRatingRepository extends JpaRepository<TripRating, Long> {
             @Param("driverId") Long driverId,
             @Param("limit") int limit
     );
-}
\ No newline at end of file
+
+    /**
+     * Keyset page of a driver's ratings, newest first, as flat rows
+     */
+    @Query(value = "SELECT r.id AS \"ratingId\", r.trip_id AS \"tripId\", r.rating AS \"rating\", " +
+            "r.comment AS \"comment\", r.created_at AS \"createdAt\", p.id AS \"passengerId\", " +
+            "p.name AS \"passengerName\", p.profile_picture AS \"passengerPicture\" " +
+            "FROM trip_ratings r " +
+            "JOIN trips t ON t.id = r.trip_id " +
+            "JOIN users p ON p.id = r.passenger_id " +
+            "WHERE t.driver_id = :driverId AND (r.created_at, r.id) < (:beforeCreatedAt, :beforeId) " +
+            "ORDER BY r.created_at DESC, r.id DESC LIMIT :limit",
+            nativeQuery = true)
+    List<RatingFeedProjection> findDriverRatingsPage(
+            @Param("driverId") Long driverId,
+            @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+            @Param("beforeId") long beforeId,
+            @Param("limit") int limit
+    );
+
+    /**
+     * Star histogram, totals and recent-window average of a driver in one pass
+     */
+    @Query(value = "SELECT COUNT(*) AS \"total\", COALESCE(SUM(r.rating), 0) AS \"ratingSum\", " +
+            "COUNT(*) FILTER (WHERE r.rating = 1) AS \"stars1\", " +
+            "COUNT(*) FILTER (WHERE r.rating = 2) AS \"stars2\", " +
+            "COUNT(*) FILTER (WHERE r.rating = 3) AS \"stars3\", " +
+            "COUNT(*) FILTER (WHERE r.rating = 4) AS \"stars4\", " +
+            "COUNT(*) FILTER (WHERE r.rating = 5) AS \"stars5\", " +
+            "COUNT(*) FILTER (WHERE r.created_at >= :since) AS \"recentCount\", " +
+            "AVG(r.rating) FILTER (WHERE r.created_at >= :since) AS \"recentAverage\" " +
+            "FROM trip_ratings r JOIN trips t ON t.id = r.trip_id " +
+            "WHERE t.driver_id = :driverId",
+            nativeQuery = true)
+    RatingSummaryProjection summarizeDriverRatings(
+            @Param("driverId") Long driverId,
+            @Param("since") LocalDateTime since
+    );
+}
@@ -1,19 +1,163 @@
 package com.safra.safra.repository;
 
+import com.safra.safra.dto.TripSearchProjection;
 import com.safra.safra.entity.Trip;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface TripRepository extends JpaRepository<Trip, Long> {
 
     // Add this method for NotificationService
     List<Trip> findByStartTimeBetween(LocalDateTime startTime, LocalDateTime endTime);
+    @EntityGraph("Trip.details")
     List<Trip> findByDriverId(Long driverId);
 
+    // Trip endpoints serialize the driver and passengers: load them with the trips
+    @Override
+    @EntityGraph("Trip.details")
+    List<Trip> findAll();
+
+    @EntityGraph("Trip.details")
+    Optional<Trip> findDetailedById(Long id);
+
+    @Query("SELECT t.driver.id FROM Trip t WHERE t.id = :tripId")
+    Optional<Long> findDriverIdById(@Param("tripId") Long tripId);
+
+    /**
+     * Passenger search. Both ST_DWithin predicates are index-backed by the partial
+     * GiST indexes created in DatabaseIndexInitializer, so only candidate trips near
+     * the departure and destination are scored instead of every OPEN trip.
+     */
+    @Query(value = """
+WITH search AS (
+    SELECT
+        ST_SetSRID(ST_MakePoint(:departureLng, :departureLat), 4326)::geography AS departure,
+        ST_SetSRID(ST_MakePoint(:destinationLng, :destinationLat), 4326)::geography AS destination,
+        degrees(ST_Azimuth(
+            ST_SetSRID(ST_MakePoint(:departureLng, :departureLat), 4326),
+            ST_SetSRID(ST_MakePoint(:destinationLng, :destinationLat), 4326)
+        )) AS desired_azimuth
+),
+trip_scores AS (
+    SELECT
+        t.*,
+        ST_Distance(t.start_location, s.departure) as start_dist,
+        ST_Distance(t.end_location, s.destination) as end_dist,
+        s.desired_azimuth,
+        degrees(ST_Azimuth(t.start_location::geometry, t.end_location::geometry)) as trip_azimuth
+    FROM trips t, search s
+    WHERE t.status = 'OPEN'
+      AND ST_DWithin(t.start_location, s.departure, 6500)
+      AND ST_DWithin(t.end_location, s.destination, 6500)
+)
+SELECT
+    t.*,
+    ROUND(start_dist::numeric, 2) as start_distance_m,
+    ROUND(end_dist::numeric, 2) as end_distance_m,
+    ROUND(ABS(desired_azimuth - trip_azimuth)::numeric, 1) as direction_diff_degrees
+FROM trip_scores t
+ORDER BY
+    CASE
+        WHEN start_dist <= 2000 AND end_dist <= 2000 THEN 1
+        WHEN start_dist <= 2000 OR end_dist <= 2000 THEN 2
+        ELSE 3
+    END,
+    (start_dist + end_dist)
+""", nativeQuery = true)
+    List<Trip> findTripsWithinDistance(
+            @Param("departureLat") double departureLat,
+            @Param("departureLng") double departureLng,
+            @Param("destinationLat") double destinationLat,
+            @Param("destinationLng") double destinationLng
+    );
+
+    /**
+     * Keyset-paginated passenger search returning flat rows. Same filter and ordering
+     * as findTripsWithinDistance, with the trip id as final tie-breaker; rows strictly
+     * after (afterTier, afterDistance, afterId) are returned.
+     */
+    @Query(value = """
+WITH search AS (
+    SELECT
+        ST_SetSRID(ST_MakePoint(:departureLng, :departureLat), 4326)::geography AS departure,
+        ST_SetSRID(ST_MakePoint(:destinationLng, :destinationLat), 4326)::geography AS destination,
+        degrees(ST_Azimuth(
+            ST_SetSRID(ST_MakePoint(:departureLng, :departureLat), 4326),
+            ST_SetSRID(ST_MakePoint(:destinationLng, :destinationLat), 4326)
+        )) AS desired_azimuth
+),
+trip_scores AS (
+    SELECT
+        t.id,
+        t.start_location,
+        t.end_location,
+        t.start_time,
+        t.available_seats,
+        t.price,
+        t.driver_id,
+        ST_Distance(t.start_location, s.departure) AS start_dist,
+        ST_Distance(t.end_location, s.destination) AS end_dist,
+        ABS(s.desired_azimuth - degrees(ST_Azimuth(t.start_location::geometry, t.end_location::geometry))) AS direction_diff
+    FROM trips t, search s
+    WHERE t.status = 'OPEN'
+      AND ST_DWithin(t.start_location, s.departure, 6500)
+      AND ST_DWithin(t.end_location, s.destination, 6500)
+),
+ranked AS (
+    SELECT
+        ts.*,
+        CASE
+            WHEN start_dist <= 2000 AND end_dist <= 2000 THEN 1
+            WHEN start_dist <= 2000 OR end_dist <= 2000 THEN 2
+            ELSE 3
+        END AS tier,
+        (start_dist + end_dist) AS total_dist
+    FROM trip_scores ts
+)
+SELECT
+    r.id AS "tripId",
+    ST_Y(r.start_location::geometry) AS "startLat",
+    ST_X(r.start_location::geometry) AS "startLng",
+    ST_Y(r.end_location::geometry) AS "endLat",
+    ST_X(r.end_location::geometry) AS "endLng",
+    r.start_time AS "startTime",
+    r.available_seats AS "availableSeats",
+    r.price AS "price",
+    u.id AS "driverId",
+    u.name AS "driverName",
+    u.average_rating AS "driverRating",
+    r.start_dist AS "startDistanceM",
+    r.end_dist AS "endDistanceM",
+    r.direction_diff AS "directionDiffDegrees",
+    r.tier AS "tier"
+FROM ranked r
+JOIN users u ON u.id = r.driver_id
+WHERE (r.tier, r.total_dist, r.id) > (:afterTier, :afterDistance, :afterId)
+ORDER BY r.tier, r.total_dist, r.id
+LIMIT :limit
+""", nativeQuery = true)
+    List<TripSearchProjection> searchTripsPage(
+            @Param("departureLat") double departureLat,
+            @Param("departureLng") double departureLng,
+            @Param("destinationLat") double destinationLat,
+            @Param("destinationLng") double destinationLng,
+            @Param("afterTier") int afterTier,
+            @Param("afterDistance") double afterDistance,
+            @Param("afterId") long afterId,
+            @Param("limit") int limit
+    );
+
+    /**
+     * Previous full-scan search, kept only so the trip search benchmark can compare
+     * latencies against it. Do not use from request handling code.
+     */
     @Query(value = """
 WITH trip_scores AS (
     SELECT 
@@ -49,7 +193,7 @@ ORDER BY
     END,
     (start_dist + end_dist)
 """, nativeQuery = true)
-    List<Trip> findTripsWithinDistance(
+    List<Trip> findTripsWithinDistanceFullScan(
             @Param("departureLat") double departureLat,
             @Param("departureLng") double departureLng,
             @Param("destinationLat") double destinationLat,
@@ -62,6 +206,43 @@ ORDER BY
     // Find trips by status
     List<Trip> findByStatus(String status);
 
+    long countByStatus(String status);
+
+    @Query("SELECT t.status FROM Trip t WHERE t.id = :id")
+    Optional<String> findStatusById(@Param("id") Long id);
+
+    // Snapshots for OpenTripIndex: driver and passengers are fetched up front so the
+    // detached trips can be serialized without a session
+    @Query("SELECT DISTINCT t FROM Trip t JOIN FETCH t.driver LEFT JOIN FETCH t.passengers WHERE t.status = 'OPEN'")
+    List<Trip> findOpenTripsForIndex();
+
+    @Query("SELECT t FROM Trip t JOIN FETCH t.driver LEFT JOIN FETCH t.passengers WHERE t.id = :id AND t.status = 'OPEN'")
+    Optional<Trip> findOpenTripForIndex(@Param("id") Long id);
+
     // Find trips by driver and status
     List<Trip> findByDriverIdAndStatus(Long driverId, String status);
-}
\ No newline at end of file
+
+    /**
+     * Current rating sum; rows rated before rating_sum existed derive it from their average
+     */
+    String RATING_SUM = "COALESCE(rating_sum, ROUND(COALESCE(average_rating, 0) * COALESCE(total_ratings, 0))::bigint)";
+
+    /**
+     * Add one rating to the trip's running aggregates. The row lock taken by the
+     * UPDATE serializes concurrent ratings, so none is lost.
+     */
+    @Modifying
+    @Query(value = "UPDATE trips SET rating_sum = " + RATING_SUM + " + :rating, " +
+            "total_ratings = COALESCE(total_ratings, 0) + 1, " +
+            "average_rating = ROUND((" + RATING_SUM + " + :rating)::numeric / (COALESCE(total_ratings, 0) + 1), 2) " +
+            "WHERE id = :tripId", nativeQuery = true)
+    int addRating(@Param("tripId") Long tripId, @Param("rating") int rating);
+
+    /**
+     * Clear the navigation columns once a trip stops being tracked
+     */
+    @Modifying
+    @Query(value = "UPDATE trips SET current_driver_lat = NULL, current_driver_lng = NULL, driver_speed = NULL, " +
+            "driver_bearing = NULL, last_location_update = NULL WHERE id = :tripId", nativeQuery = true)
+    int clearDriverLocation(@Param("tripId") Long tripId);
+}
@@ -0,0 +1,13 @@
+package com.safra.safra.repository;
+
+import com.safra.safra.entity.TripTrackSegment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import java.util.List;
+
+@RepositoryRestResource(exported = false)
+public interface TripTrackSegmentRepository extends JpaRepository<TripTrackSegment, Long> {
+
+    List<TripTrackSegment> findByTripIdOrderByStartTimeAscIdAsc(Long tripId);
+}
@@ -2,10 +2,40 @@ package com.safra.safra.repository;
 
 import com.safra.safra.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByEmail(String email);
+
+    /**
+     * Forget FCM tokens that Firebase reported as no longer registered
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.fcmToken = NULL WHERE u.fcmToken IN :tokens")
+    int clearFcmTokens(@Param("tokens") Collection<String> tokens);
+
+    /**
+     * Add one rating to the driver's running aggregates (atomic, see TripRepository.addRating)
+     */
+    @Modifying
+    @Query(value = "UPDATE users SET rating_sum = " + TripRepository.RATING_SUM + " + :rating, " +
+            "total_ratings = COALESCE(total_ratings, 0) + 1, " +
+            "average_rating = ROUND((" + TripRepository.RATING_SUM + " + :rating)::numeric / (COALESCE(total_ratings, 0) + 1), 2) " +
+            "WHERE id = :userId", nativeQuery = true)
+    int addRating(@Param("userId") Long userId, @Param("rating") int rating);
+
+    /**
+     * Role of a user who may still use the API (not banned, not archived)
+     */
+    @Query(value = "SELECT role FROM users WHERE id = :userId " +
+            "AND COALESCE(is_banned, false) = false AND COALESCE(is_archived, false) = false", nativeQuery = true)
+    Optional<String> findActiveRole(@Param("userId") Long userId);
 }
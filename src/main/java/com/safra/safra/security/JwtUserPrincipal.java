@@ -0,0 +1,39 @@
+package com.safra.safra.security;
+
+import com.safra.safra.entity.Role;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Authenticated user built from the token claims alone (no database lookup).
+ * getUsername() is the email, like the principal of CustomUserDetailsService.
+ */
+@Getter
+@RequiredArgsConstructor
+public class JwtUserPrincipal implements UserDetails {
+
+    private final Long id;
+    private final String email;
+    private final Role role;
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return List.of(new SimpleGrantedAuthority("ROLE_" + role.name()));
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+}
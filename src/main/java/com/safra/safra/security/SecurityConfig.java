@@ -1,5 +1,6 @@
 package com.safra.safra.security;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -34,6 +35,8 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 // authorization rules
                 .authorizeHttpRequests(auth -> auth
+                        // async dispatches of already-authorized requests (SSE streams)
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // allow preflight requests
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                         // public auth endpoints
@@ -85,7 +88,7 @@ public class SecurityConfig {
         ));
         config.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS","PATCH"));
         // allow Authorization header because frontend sends Bearer token
-        config.setAllowedHeaders(List.of("Authorization", "Cache-Control", "Content-Type", "X-Requested-With"));
+        config.setAllowedHeaders(List.of("Authorization", "Cache-Control", "Content-Type", "X-Requested-With", "Idempotency-Key"));
         config.setExposedHeaders(List.of("Authorization"));
         // if you use cookies or credentials, keep true (and do NOT use "*")
         config.setAllowCredentials(true);
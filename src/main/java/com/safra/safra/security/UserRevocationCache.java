@@ -0,0 +1,43 @@
+package com.safra.safra.security;
+
+import com.safra.safra.cache.TtlCache;
+import com.safra.safra.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Current standing of users authenticated by stateless tokens: their role, or
+ * REVOKED when they are banned, archived or deleted. Entries live for a few seconds,
+ * so a ban takes effect on every node within the TTL, and immediately on the node
+ * that applied it (evict).
+ */
+@Component
+public class UserRevocationCache {
+
+    private static final String REVOKED = "";
+
+    private final UserRepository userRepository;
+    private final TtlCache<Long, String> standing;
+
+    public UserRevocationCache(UserRepository userRepository,
+                               @Value("${jwt.revocation-ttl-seconds:30}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.standing = new TtlCache<>(50_000, Duration.ofSeconds(ttlSeconds));
+    }
+
+    /**
+     * Whether a token issued to this user with this role is still honoured. A role
+     * change also rejects older tokens, so the user logs in again with the new role.
+     */
+    public boolean isAllowed(Long userId, String tokenRole) {
+        String current = standing.computeIfAbsent(userId, id ->
+                userRepository.findActiveRole(id).orElse(REVOKED));
+        return !REVOKED.equals(current) && current.equals(tokenRole);
+    }
+
+    public void evict(Long userId) {
+        standing.invalidate(userId);
+    }
+}
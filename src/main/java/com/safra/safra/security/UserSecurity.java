@@ -1,23 +1,100 @@
 package com.safra.safra.security;
 
+import com.safra.safra.cache.TtlCache;
+import com.safra.safra.entity.User;
+import com.safra.safra.repository.RideRequestRepository;
+import com.safra.safra.repository.TripRepository;
 import com.safra.safra.repository.UserRepository;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ownership checks for @PreAuthorize expressions (@userSecurity.xxx(...)).
+ *
+ * The current user id comes from the JwtUserPrincipal, so self checks need no query.
+ * Trip drivers and the trips of ride requests rarely or never change and are cached
+ * by id (misses are not cached); TripService evicts a trip after its driver is reassigned.
+ * A driver lookup that overlapped an eviction is not kept (generation counter), so the
+ * previous driver cannot be cached again.
+ */
 @Component("userSecurity")
 public class UserSecurity {
 
     private final UserRepository userRepository;
+    private final TripRepository tripRepository;
+    private final RideRequestRepository rideRequestRepository;
+
+    // Legacy tokens only: principal email -> user id
+    private final TtlCache<String, Long> userIdsByEmail = new TtlCache<>(10_000, Duration.ofMinutes(10));
+    private final TtlCache<Long, Long> tripDrivers = new TtlCache<>(50_000, Duration.ofMinutes(30));
+    private final TtlCache<Long, Long> requestTrips = new TtlCache<>(50_000, Duration.ofMinutes(30));
+    private final AtomicLong tripDriverGeneration = new AtomicLong();
 
-    public UserSecurity(UserRepository userRepository) {
+    public UserSecurity(UserRepository userRepository,
+                        TripRepository tripRepository,
+                        RideRequestRepository rideRequestRepository) {
         this.userRepository = userRepository;
+        this.tripRepository = tripRepository;
+        this.rideRequestRepository = rideRequestRepository;
+    }
+
+    /**
+     * Id of the authenticated user, or null when anonymous
+     */
+    public Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) return null;
+        if (authentication.getPrincipal() instanceof JwtUserPrincipal principal) {
+            return principal.getId();
+        }
+        return userIdsByEmail.computeIfAbsent(authentication.getName(), email ->
+                userRepository.findByEmail(email).map(User::getId).orElse(null));
     }
 
     public boolean isSelf(Long id) {
-        String currentEmail = SecurityContextHolder.getContext().getAuthentication().getName();
+        Long current = currentUserId();
+        return current != null && current.equals(id);
+    }
+
+    /**
+     * Current user drives this trip
+     */
+    public boolean isTripDriver(Long tripId) {
+        return tripId != null && isSelf(driverOf(tripId));
+    }
+
+    /**
+     * Current user drives the trip this ride request is for (may accept/reject it)
+     */
+    public boolean isRequestTripDriver(Long requestId) {
+        return requestId != null && isTripDriver(requestTrips.computeIfAbsent(requestId, id ->
+                rideRequestRepository.findTripIdById(id).orElse(null)));
+    }
+
+    public void evictTrip(Long tripId) {
+        tripDriverGeneration.incrementAndGet();
+        tripDrivers.invalidate(tripId);
+    }
 
-        return userRepository.findById(id)
-                .map(user -> user.getEmail().equals(currentEmail))
-                .orElse(false);
+    private Long driverOf(Long tripId) {
+        Long cached = tripDrivers.get(tripId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = tripDriverGeneration.get();
+        Long driverId = tripRepository.findDriverIdById(tripId).orElse(null);
+        if (driverId != null) {
+            tripDrivers.put(tripId, driverId);
+            // The driver may have been read before a reassignment committed
+            if (tripDriverGeneration.get() != generation) {
+                tripDrivers.invalidate(tripId);
+            }
+        }
+        return driverId;
     }
 }
@@ -0,0 +1,154 @@
+package com.safra.safra.service;
+
+import com.safra.safra.dto.DriverLocationUpdateDTO;
+import com.safra.safra.entity.Trip;
+import com.safra.safra.repository.TripRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest driver location per ACTIVE trip, kept in memory.
+ *
+ * GPS pings only touch this map; the trips table is updated write-behind, in one
+ * JDBC batch per flush interval with at most one row update per trip (intermediate
+ * pings are coalesced). The flush never resurrects a location on a trip that is no
+ * longer ACTIVE, and trips whose row no longer matched are dropped from the store, so
+ * the next ping goes through the status check again.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DriverLocationStore {
+
+    private static final String FLUSH_SQL = "UPDATE trips SET current_driver_lat = ?, current_driver_lng = ?, " +
+            "driver_speed = ?, driver_bearing = ?, last_location_update = ? WHERE id = ? AND status = 'ACTIVE'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TripRepository tripRepository;
+
+    private final Map<Long, DriverLocationUpdateDTO> locations = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyTrips = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Load the last persisted positions so /active and passenger polling work right after a restart
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            for (Trip trip : tripRepository.findActiveTripsWithLocation()) {
+                DriverLocationUpdateDTO location = new DriverLocationUpdateDTO();
+                location.setTripId(trip.getId());
+                location.setLatitude(trip.getCurrentDriverLat());
+                location.setLongitude(trip.getCurrentDriverLng());
+                location.setSpeed(trip.getDriverSpeed());
+                location.setBearing(trip.getDriverBearing());
+                location.setTimestamp(trip.getLastLocationUpdate());
+                locations.putIfAbsent(trip.getId(), location);
+            }
+            log.info("📍 Driver location store warmed up with {} active trips", locations.size());
+        } catch (Exception e) {
+            log.warn("Failed to warm up driver location store: {}", e.getMessage());
+        }
+    }
+
+    public boolean isTracked(Long tripId) {
+        return locations.containsKey(tripId);
+    }
+
+    public void update(DriverLocationUpdateDTO location) {
+        locations.put(location.getTripId(), location);
+        dirtyTrips.add(location.getTripId());
+    }
+
+    public Optional<DriverLocationUpdateDTO> get(Long tripId) {
+        return Optional.ofNullable(locations.get(tripId));
+    }
+
+    public Collection<DriverLocationUpdateDTO> getAll() {
+        return List.copyOf(locations.values());
+    }
+
+    /**
+     * Persist pending locations of every trip in a single batch
+     */
+    @Scheduled(fixedDelayString = "${trips.location.flush-interval-ms:5000}")
+    public void flush() {
+        if (dirtyTrips.isEmpty()) return;
+
+        List<Object[]> batch = new ArrayList<>();
+        for (Long tripId : List.copyOf(dirtyTrips)) {
+            // Clear the flag before reading: a ping arriving meanwhile re-marks the trip
+            dirtyTrips.remove(tripId);
+            DriverLocationUpdateDTO location = locations.get(tripId);
+            if (location != null) {
+                batch.add(toRow(location));
+            }
+        }
+        write(batch);
+    }
+
+    /**
+     * Persist the pending location of one trip now (e.g. before navigation ends)
+     */
+    public void flush(Long tripId) {
+        if (!dirtyTrips.remove(tripId)) return;
+        DriverLocationUpdateDTO location = locations.get(tripId);
+        if (location != null) {
+            write(List.<Object[]>of(toRow(location)));
+        }
+    }
+
+    /**
+     * Stop tracking a trip (completed, cancelled). Pending pings are dropped.
+     */
+    public void evict(Long tripId) {
+        dirtyTrips.remove(tripId);
+        locations.remove(tripId);
+    }
+
+    private void write(List<Object[]> batch) {
+        if (batch.isEmpty()) return;
+        try {
+            int[] updated = jdbcTemplate.batchUpdate(FLUSH_SQL, batch);
+            log.debug("Flushed {} driver locations", batch.size());
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    Long tripId = (Long) batch.get(i)[5];
+                    log.debug("Trip {} is no longer ACTIVE, no longer tracking its location", tripId);
+                    evict(tripId);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to flush {} driver locations: {}", batch.size(), e.getMessage());
+            // Retry on the next flush
+            for (Object[] row : batch) {
+                dirtyTrips.add((Long) row[5]);
+            }
+        }
+    }
+
+    private Object[] toRow(DriverLocationUpdateDTO location) {
+        return new Object[]{
+                location.getLatitude(),
+                location.getLongitude(),
+                location.getSpeed(),
+                location.getBearing(),
+                location.getTimestamp() != null ? Timestamp.valueOf(location.getTimestamp()) : null,
+                location.getTripId()
+        };
+    }
+}
@@ -0,0 +1,193 @@
+package com.safra.safra.service;
+
+import com.safra.safra.dto.DriverLocationUpdateDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fans out driver location updates to passengers over Server-Sent Events.
+ *
+ * Each subscriber holds only the latest undelivered location: a slow client never
+ * queues up a backlog, it skips straight to the newest position once its previous
+ * send completes. Sends run on a small bounded pool so a stalled connection cannot
+ * block the driver's update request.
+ */
+@Service
+@Slf4j
+public class DriverLocationStreamService {
+
+    private static final String EVENT_NAME = "location";
+
+    @Value("${trips.location.stream-timeout-ms:1800000}")
+    private long streamTimeoutMs;
+
+    @Value("${trips.location.stream-max-subscribers-per-trip:50}")
+    private int maxSubscribersPerTrip;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor sender = new ThreadPoolExecutor(
+            2, 8, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(1000),
+            runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setName("location-stream-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Open a stream for a trip. The current location, if known, is sent immediately.
+     * Throws TooManySubscribersException when the trip already has the maximum.
+     */
+    public SseEmitter subscribe(Long tripId, DriverLocationUpdateDTO currentLocation) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        Subscriber subscriber = new Subscriber(tripId, emitter);
+
+        // Check and add under the map's lock for the trip, so a concurrent unsubscribe
+        // cannot drop the set we add to and the limit cannot be overshot
+        AtomicBoolean added = new AtomicBoolean(false);
+        Set<Subscriber> tripSubscribers = subscribers.compute(tripId, (id, set) -> {
+            Set<Subscriber> current = set != null ? set : ConcurrentHashMap.newKeySet();
+            if (current.size() < maxSubscribersPerTrip) {
+                current.add(subscriber);
+                added.set(true);
+            }
+            return current.isEmpty() ? null : current;
+        });
+        if (!added.get()) {
+            throw new TooManySubscribersException("Too many location subscribers for this trip");
+        }
+
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+
+        if (currentLocation != null) {
+            subscriber.offer(currentLocation);
+        }
+        log.debug("Passenger subscribed to location stream of trip {} ({} subscribers)", tripId, tripSubscribers.size());
+        return emitter;
+    }
+
+    /**
+     * Push a new driver location to every subscriber of the trip
+     */
+    public void publish(Long tripId, DriverLocationUpdateDTO location) {
+        Set<Subscriber> tripSubscribers = subscribers.get(tripId);
+        if (tripSubscribers == null || tripSubscribers.isEmpty()) {
+            return;
+        }
+        for (Subscriber subscriber : tripSubscribers) {
+            subscriber.offer(location);
+        }
+    }
+
+    /**
+     * Close every stream of a trip (navigation ended, trip cancelled)
+     */
+    public void complete(Long tripId) {
+        Set<Subscriber> tripSubscribers = subscribers.remove(tripId);
+        if (tripSubscribers == null) return;
+        for (Subscriber subscriber : tripSubscribers) {
+            try {
+                subscriber.emitter.complete();
+            } catch (Exception e) {
+                log.debug("Failed to complete location stream of trip {}: {}", tripId, e.getMessage());
+            }
+        }
+    }
+
+    public int getSubscriberCount(Long tripId) {
+        Set<Subscriber> tripSubscribers = subscribers.get(tripId);
+        return tripSubscribers == null ? 0 : tripSubscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.keySet().forEach(this::complete);
+        sender.shutdownNow();
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.tripId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    public static class TooManySubscribersException extends RuntimeException {
+        public TooManySubscribersException(String message) {
+            super(message);
+        }
+    }
+
+    private class Subscriber {
+        private final Long tripId;
+        private final SseEmitter emitter;
+        private final AtomicReference<DriverLocationUpdateDTO> latest = new AtomicReference<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+
+        Subscriber(Long tripId, SseEmitter emitter) {
+            this.tripId = tripId;
+            this.emitter = emitter;
+        }
+
+        void offer(DriverLocationUpdateDTO location) {
+            // Overwrite whatever was not delivered yet - drop-to-latest
+            latest.set(location);
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (!draining.compareAndSet(false, true)) {
+                return; // a drain is already running and will pick up the new value
+            }
+            try {
+                sender.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Pool saturated: keep the value, the next offer will retry
+                draining.set(false);
+            }
+        }
+
+        private void drain() {
+            try {
+                DriverLocationUpdateDTO location;
+                while ((location = latest.getAndSet(null)) != null) {
+                    emitter.send(SseEmitter.event()
+                            .name(EVENT_NAME)
+                            .data(location, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                unsubscribe(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            // A value may have arrived between the last poll and releasing the flag
+            if (latest.get() != null) {
+                scheduleDrain();
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.PrecisionModel;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -34,6 +35,7 @@ public class FakerService {
     private final SubscriptionRepository subscriptionRepository;
     private final StripePaymentRepository stripePaymentRepository;
     private final PasswordEncoder passwordEncoder;
+    private final JdbcTemplate jdbcTemplate;
     
     @PersistenceContext
     private EntityManager entityManager;
@@ -954,6 +956,156 @@ public class FakerService {
         return payments;
     }
 
+    // ============ TRIP SEARCH BENCHMARK ============
+
+    private static final int SEED_BATCH_SIZE = 5000;
+
+    /**
+     * Bulk-insert OPEN trips between the Tunisian cities for search benchmarking.
+     * Uses plain JDBC batches (one commit per batch) so a 1M row seed stays fast;
+     * drivers are picked among existing users, so run a populate first.
+     */
+    public Map<String, Object> seedBenchmarkTrips(int count) {
+        List<Long> driverIds = jdbcTemplate.queryForList("SELECT id FROM users", Long.class);
+        if (driverIds.isEmpty()) {
+            throw new RuntimeException("No users found. Populate the database before seeding benchmark trips.");
+        }
+
+        log.info("🌱 Seeding {} benchmark trips...", count);
+        long start = System.currentTimeMillis();
+        String sql = "INSERT INTO trips (id, driver_id, start_location, end_location, start_time, description, " +
+                "is_archived, available_seats, price, status, total_ratings) VALUES (?, ?, " +
+                "ST_SetSRID(ST_MakePoint(?, ?), 4326)::geography, ST_SetSRID(ST_MakePoint(?, ?), 4326)::geography, " +
+                "?, ?, false, ?, ?, ?, 0)";
+
+        int inserted = 0;
+        while (inserted < count) {
+            int batchSize = Math.min(SEED_BATCH_SIZE, count - inserted);
+            List<Long> ids = allocateTripIds(batchSize);
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                int startIdx = random.nextInt(TUNISIAN_CITIES.length);
+                int endIdx;
+                do {
+                    endIdx = random.nextInt(TUNISIAN_CITIES.length);
+                } while (endIdx == startIdx);
+
+                // Most trips are in the past or already taken, like production data
+                String status = random.nextDouble() < 0.2 ? Trip.Status.OPEN
+                        : faker.options().option(Trip.Status.COMPLETED, Trip.Status.CANCELED, Trip.Status.SCHEDULED);
+
+                batch.add(new Object[]{
+                        ids.get(i),
+                        driverIds.get(random.nextInt(driverIds.size())),
+                        TUNISIAN_CITIES[startIdx][1] + (random.nextDouble() - 0.5) * 0.1,
+                        TUNISIAN_CITIES[startIdx][0] + (random.nextDouble() - 0.5) * 0.1,
+                        TUNISIAN_CITIES[endIdx][1] + (random.nextDouble() - 0.5) * 0.1,
+                        TUNISIAN_CITIES[endIdx][0] + (random.nextDouble() - 0.5) * 0.1,
+                        java.sql.Timestamp.valueOf(LocalDateTime.now().plusMinutes(random.nextInt(60 * 24 * 30))),
+                        faker.options().option(TRIP_DESCRIPTIONS),
+                        random.nextInt(4) + 1,
+                        5 + random.nextInt(40),
+                        status
+                });
+            }
+            jdbcTemplate.batchUpdate(sql, batch);
+            inserted += batchSize;
+            if (inserted % 100_000 == 0) {
+                log.info("   ... {} trips inserted", inserted);
+            }
+        }
+        jdbcTemplate.execute("ANALYZE trips");
+
+        long duration = System.currentTimeMillis() - start;
+        log.info("✅ Seeded {} benchmark trips in {} ms", inserted, duration);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("tripsInserted", inserted);
+        result.put("totalTrips", tripRepository.count());
+        result.put("executionTimeMs", duration);
+        return result;
+    }
+
+    /**
+     * Reserve trip ids from trip_seq the way Hibernate's pooled optimizer does: each
+     * nextval() owns the block of Trip.ID_ALLOCATION_SIZE ids ending at the returned value
+     */
+    private List<Long> allocateTripIds(int count) {
+        List<Long> ids = new ArrayList<>(count);
+        while (ids.size() < count) {
+            int blocks = (count - ids.size() + Trip.ID_ALLOCATION_SIZE - 1) / Trip.ID_ALLOCATION_SIZE;
+            List<Long> blockEnds = jdbcTemplate.queryForList(
+                    "SELECT nextval('trip_seq') FROM generate_series(1, ?)", Long.class, blocks);
+            for (Long end : blockEnds) {
+                for (long id = Math.max(1, end - Trip.ID_ALLOCATION_SIZE + 1); id <= end && ids.size() < count; id++) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Run the passenger search against random city pairs with the previous full-scan
+     * query and the index-backed query, and report p50/p99 latencies for both.
+     */
+    public Map<String, Object> benchmarkTripSearch(int samples) {
+        List<double[]> searches = new ArrayList<>(samples);
+        for (int i = 0; i < samples; i++) {
+            int startIdx = random.nextInt(TUNISIAN_CITIES.length);
+            int endIdx;
+            do {
+                endIdx = random.nextInt(TUNISIAN_CITIES.length);
+            } while (endIdx == startIdx);
+            searches.add(new double[]{
+                    TUNISIAN_CITIES[startIdx][0] + (random.nextDouble() - 0.5) * 0.05,
+                    TUNISIAN_CITIES[startIdx][1] + (random.nextDouble() - 0.5) * 0.05,
+                    TUNISIAN_CITIES[endIdx][0] + (random.nextDouble() - 0.5) * 0.05,
+                    TUNISIAN_CITIES[endIdx][1] + (random.nextDouble() - 0.5) * 0.05
+            });
+        }
+
+        log.info("⏱️ Benchmarking trip search with {} samples...", samples);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("samples", samples);
+        result.put("openTrips", tripRepository.countByStatus(Trip.Status.OPEN));
+        result.put("before", timeSearches(searches, s ->
+                tripRepository.findTripsWithinDistanceFullScan(s[0], s[1], s[2], s[3]).size()));
+        result.put("after", timeSearches(searches, s ->
+                tripRepository.findTripsWithinDistance(s[0], s[1], s[2], s[3]).size()));
+        log.info("✅ Trip search benchmark: {}", result);
+        return result;
+    }
+
+    private Map<String, Object> timeSearches(List<double[]> searches,
+                                             java.util.function.ToIntFunction<double[]> search) {
+        // Warm up the plan cache and shared buffers before measuring
+        for (int i = 0; i < Math.min(10, searches.size()); i++) {
+            search.applyAsInt(searches.get(i));
+        }
+
+        long[] latenciesMicros = new long[searches.size()];
+        long totalResults = 0;
+        for (int i = 0; i < searches.size(); i++) {
+            long start = System.nanoTime();
+            totalResults += search.applyAsInt(searches.get(i));
+            latenciesMicros[i] = (System.nanoTime() - start) / 1000;
+        }
+        Arrays.sort(latenciesMicros);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("p50Ms", percentile(latenciesMicros, 0.50) / 1000.0);
+        stats.put("p99Ms", percentile(latenciesMicros, 0.99) / 1000.0);
+        stats.put("maxMs", latenciesMicros[latenciesMicros.length - 1] / 1000.0);
+        stats.put("avgResults", (double) totalResults / searches.size());
+        return stats;
+    }
+
+    private long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
     private void logSummary(Map<String, Object> stats) {
         log.info("╔══════════════════════════════════════════════════════════════╗");
         log.info("║           🎉 SAFRA DATABASE POPULATION SUMMARY 🎉            ║");
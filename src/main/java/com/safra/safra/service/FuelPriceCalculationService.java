@@ -1,19 +1,26 @@
 package com.safra.safra.service;
 
 
+import com.safra.safra.dto.PriceCalculationRequest;
+import com.safra.safra.dto.PriceQuoteDTO;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.ResponseEntity;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
 
 @Service
 @RequiredArgsConstructor
 public class FuelPriceCalculationService {
 
-    private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper;
+    private final OSRMClient osrmClient;
+    private final HubDistanceMatrix hubDistanceMatrix;
+
+    // Public OSRM servers reject /table requests with more than 100 coordinates
+    public static final int MAX_BATCH_SIZE = 50;
 
     // Tunisia fuel prices (TND per liter) - Updated periodically
     private static final double ESSENCE_PRICE_PER_LITER = 2.350; // Essence sans plomb
@@ -73,7 +80,8 @@ public class FuelPriceCalculationService {
     }
 
     /**
-     * Get distance between two coordinates using OSRM
+     * Get distance between two coordinates, from the hub matrix when the endpoints
+     * are close enough to hubs, otherwise using OSRM
      * @param startLat Starting latitude
      * @param startLon Starting longitude
      * @param endLat Ending latitude
@@ -82,17 +90,14 @@ public class FuelPriceCalculationService {
      */
     public double calculateDistance(double startLat, double startLon,
                                     double endLat, double endLon) {
-        try {
-            String osrmUrl = String.format(
-                    "http://router.project-osrm.org/route/v1/driving/%f,%f;%f,%f?overview=false",
-                    startLon, startLat, endLon, endLat
-            );
-
-            ResponseEntity<String> response = restTemplate.getForEntity(osrmUrl, String.class);
-            JsonNode root = objectMapper.readTree(response.getBody());
+        OptionalDouble estimate = hubDistanceMatrix.estimateMeters(startLat, startLon, endLat, endLon);
+        if (estimate.isPresent()) {
+            return estimate.getAsDouble() / 1000.0;
+        }
 
-            // Get distance in meters from OSRM response
-            double distanceMeters = root.path("routes").get(0).path("distance").asDouble();
+        try {
+            // Cached and coalesced per rounded coordinate pair
+            double distanceMeters = osrmClient.getDistanceMeters(startLat, startLon, endLat, endLon);
 
             // Convert to kilometers
             return distanceMeters / 1000.0;
@@ -103,6 +108,104 @@ public class FuelPriceCalculationService {
         }
     }
 
+    /**
+     * Price ranges for many origin/destination pairs at once. Distances come from the hub
+     * matrix or the OSRM cache when possible; all remaining pairs are resolved with a
+     * single OSRM /table request, and pairs OSRM cannot answer fall back to Haversine.
+     */
+    public List<PriceQuoteDTO> quoteBatch(List<PriceCalculationRequest> requests) {
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " pairs per batch");
+        }
+
+        int count = requests.size();
+        double[] distancesKm = new double[count];
+        String[] sources = new String[count];
+        List<Integer> pending = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            PriceCalculationRequest request = requests.get(i);
+            OptionalDouble estimate = hubDistanceMatrix.estimateMeters(
+                    request.getStartLat(), request.getStartLon(), request.getEndLat(), request.getEndLon());
+            if (estimate.isPresent()) {
+                distancesKm[i] = estimate.getAsDouble() / 1000.0;
+                sources[i] = "hub";
+                continue;
+            }
+            OptionalDouble cached = osrmClient.getCachedDistanceMeters(
+                    request.getStartLat(), request.getStartLon(), request.getEndLat(), request.getEndLon());
+            if (cached.isPresent()) {
+                distancesKm[i] = cached.getAsDouble() / 1000.0;
+                sources[i] = "osrm";
+                continue;
+            }
+            pending.add(i);
+        }
+
+        if (!pending.isEmpty()) {
+            resolveWithTable(requests, pending, distancesKm, sources);
+        }
+
+        List<PriceQuoteDTO> quotes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            PriceCalculationRequest request = requests.get(i);
+            PriceRange range = getSuggestedPriceRange(distancesKm[i], request.getFuelType(), request.getNumberOfSeats());
+            quotes.add(PriceQuoteDTO.builder()
+                    .distance(Math.round(distancesKm[i] * 100.0) / 100.0)
+                    .suggestedPrice(range.suggested)
+                    .minPrice(range.min)
+                    .maxPrice(range.max)
+                    .fuelType(request.getFuelType())
+                    .distanceSource(sources[i])
+                    .build());
+        }
+        return quotes;
+    }
+
+    private void resolveWithTable(List<PriceCalculationRequest> requests, List<Integer> pending,
+                                  double[] distancesKm, String[] sources) {
+        // Deduplicate endpoints so repeated origins/destinations cost one table row/column
+        Map<String, Integer> originIndex = new LinkedHashMap<>();
+        Map<String, Integer> destinationIndex = new LinkedHashMap<>();
+        List<double[]> origins = new ArrayList<>();
+        List<double[]> destinations = new ArrayList<>();
+        int[] row = new int[pending.size()];
+        int[] column = new int[pending.size()];
+
+        for (int k = 0; k < pending.size(); k++) {
+            PriceCalculationRequest request = requests.get(pending.get(k));
+            row[k] = originIndex.computeIfAbsent(osrmClient.coordinates(request.getStartLat(), request.getStartLon()), key -> {
+                origins.add(new double[]{request.getStartLat(), request.getStartLon()});
+                return origins.size() - 1;
+            });
+            column[k] = destinationIndex.computeIfAbsent(osrmClient.coordinates(request.getEndLat(), request.getEndLon()), key -> {
+                destinations.add(new double[]{request.getEndLat(), request.getEndLon()});
+                return destinations.size() - 1;
+            });
+        }
+
+        double[][] table = null;
+        try {
+            table = osrmClient.getDistanceTable(origins, destinations);
+        } catch (Exception e) {
+            // Every pending pair falls back to Haversine below
+        }
+
+        for (int k = 0; k < pending.size(); k++) {
+            int i = pending.get(k);
+            double meters = table != null ? table[row[k]][column[k]] : Double.NaN;
+            if (!Double.isNaN(meters)) {
+                distancesKm[i] = meters / 1000.0;
+                sources[i] = "osrm";
+            } else {
+                PriceCalculationRequest request = requests.get(i);
+                distancesKm[i] = calculateHaversineDistance(
+                        request.getStartLat(), request.getStartLon(), request.getEndLat(), request.getEndLon());
+                sources[i] = "haversine";
+            }
+        }
+    }
+
     /**
      * Calculate distance using Haversine formula (as fallback)
      */
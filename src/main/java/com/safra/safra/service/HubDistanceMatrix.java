@@ -0,0 +1,179 @@
+package com.safra.safra.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safra.safra.config.HubDistanceConfig;
+import com.safra.safra.config.HubDistanceConfig.Hub;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * Driving distances between configured hubs, computed in bulk with one OSRM /table
+ * call and persisted to osrm.hubs.matrix-file. Startup only loads that file; the matrix
+ * is (re)computed through the admin refresh endpoint, never on the startup path.
+ *
+ * A trip is estimated as: local leg to the nearest start hub + hub to hub distance +
+ * local leg from the nearest end hub. The estimate is used only when both local legs
+ * together stay within the configured tolerance of the hub distance.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HubDistanceMatrix {
+
+    private static final double EARTH_RADIUS_M = 6_371_000;
+
+    private final HubDistanceConfig config;
+    private final OSRMClient osrmClient;
+    private final ObjectMapper objectMapper;
+
+    private volatile List<Hub> hubs = List.of();
+    private volatile double[][] distances;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!config.isEnabled()) return;
+        try {
+            if (!load()) {
+                log.info("No hub distance matrix at {}, prices will use OSRM directly until POST /api/admin/osrm/hubs/refresh",
+                        config.getMatrixFile());
+            }
+        } catch (Exception e) {
+            log.warn("Hub distance matrix unavailable, prices will use OSRM directly: {}", e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return distances != null;
+    }
+
+    /**
+     * Recompute the matrix from OSRM and persist it (OSRMClient never caches /table
+     * responses, so this always asks OSRM)
+     */
+    public void refresh() {
+        List<Hub> configured = List.copyOf(config.getPoints());
+        List<double[]> points = new ArrayList<>();
+        for (Hub hub : configured) {
+            points.add(new double[]{hub.getLat(), hub.getLng()});
+        }
+
+        long start = System.currentTimeMillis();
+        double[][] table = osrmClient.getDistanceTable(points, points);
+        this.hubs = configured;
+        this.distances = table;
+        log.info("🧭 Hub distance matrix computed: {} hubs in {} ms", configured.size(), System.currentTimeMillis() - start);
+
+        save(new MatrixFile(configured, table));
+    }
+
+    /**
+     * Estimated driving distance in meters, or empty when the endpoints are too far
+     * from their hubs for the estimate to be within tolerance.
+     */
+    public OptionalDouble estimateMeters(double startLat, double startLng, double endLat, double endLng) {
+        double[][] table = distances;
+        List<Hub> hubList = hubs;
+        if (table == null || hubList.isEmpty()) return OptionalDouble.empty();
+
+        int startHub = nearestHub(hubList, startLat, startLng);
+        int endHub = nearestHub(hubList, endLat, endLng);
+        if (startHub == endHub) return OptionalDouble.empty();
+
+        double hubDistance = table[startHub][endHub];
+        if (Double.isNaN(hubDistance) || hubDistance <= 0) return OptionalDouble.empty();
+
+        double startLeg = haversineMeters(startLat, startLng, hubList.get(startHub).getLat(), hubList.get(startHub).getLng())
+                * config.getLocalLegFactor();
+        double endLeg = haversineMeters(endLat, endLng, hubList.get(endHub).getLat(), hubList.get(endHub).getLng())
+                * config.getLocalLegFactor();
+
+        if (startLeg + endLeg > hubDistance * config.getTolerance()) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(startLeg + hubDistance + endLeg);
+    }
+
+    public int size() {
+        return hubs.size();
+    }
+
+    private boolean load() {
+        File file = new File(config.getMatrixFile());
+        if (!file.isFile()) return false;
+        try {
+            MatrixFile stored = objectMapper.readValue(file, MatrixFile.class);
+            if (!config.getPoints().equals(stored.getHubs())) {
+                log.info("Hub list changed, recomputing distance matrix");
+                return false;
+            }
+            this.hubs = List.copyOf(stored.getHubs());
+            this.distances = stored.getDistances();
+            log.info("🧭 Hub distance matrix loaded from {} ({} hubs)", file, hubs.size());
+            return true;
+        } catch (Exception e) {
+            log.warn("Could not read hub distance matrix {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private void save(MatrixFile matrix) {
+        try {
+            Path path = Path.of(config.getMatrixFile());
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            objectMapper.writeValue(path.toFile(), matrix);
+        } catch (Exception e) {
+            log.warn("Could not persist hub distance matrix: {}", e.getMessage());
+        }
+    }
+
+    private static int nearestHub(List<Hub> hubList, double lat, double lng) {
+        int nearest = 0;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < hubList.size(); i++) {
+            double distance = haversineMeters(lat, lng, hubList.get(i).getLat(), hubList.get(i).getLng());
+            if (distance < best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private static double haversineMeters(double lat1, double lng1, double lat2, double lng2) {
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lngDistance = Math.toRadians(lng2 - lng1);
+
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(lngDistance / 2) * Math.sin(lngDistance / 2);
+
+        return EARTH_RADIUS_M * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    @Data
+    static class MatrixFile {
+        private List<Hub> hubs;
+        private double[][] distances;
+
+        MatrixFile() {
+        }
+
+        MatrixFile(List<Hub> hubs, double[][] distances) {
+            this.hubs = hubs;
+            this.distances = distances;
+        }
+    }
+}
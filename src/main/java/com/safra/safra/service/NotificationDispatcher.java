@@ -0,0 +1,164 @@
+package com.safra.safra.service;
+
+import com.google.firebase.messaging.Message;
+import com.safra.safra.entity.NotificationOutbox;
+import com.safra.safra.entity.User;
+import com.safra.safra.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains the notification outbox.
+ *
+ * Every poll starts up to {@code workers} drain loops on the notification pool. Each
+ * loop claims a batch, resolves FCM tokens with one query, waits for the global rate
+ * limit and sends the batch with a single sendEach call, until nothing is due.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationDispatcher {
+
+    private final NotificationOutboxService outboxService;
+    private final NotificationService notificationService;
+    private final UserRepository userRepository;
+
+    @Autowired
+    @Qualifier("notificationExecutor")
+    private Executor notificationExecutor;
+
+    @Value("${notifications.outbox.workers:2}")
+    private int workers;
+
+    @Value("${notifications.outbox.batch-size:500}")
+    private int batchSize;
+
+    // Global FCM send rate across all workers of this node
+    @Value("${notifications.outbox.max-per-second:200}")
+    private int maxPerSecond;
+
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private long nextFreeNanos = System.nanoTime();
+
+    @Scheduled(fixedDelayString = "${notifications.outbox.poll-interval-ms:1000}")
+    public void poll() {
+        while (activeWorkers.get() < workers) {
+            activeWorkers.incrementAndGet();
+            try {
+                notificationExecutor.execute(this::drain);
+            } catch (RuntimeException e) {
+                activeWorkers.decrementAndGet();
+                log.warn("Could not start notification worker: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            List<NotificationOutbox> batch;
+            while (!(batch = outboxService.claim(Math.min(batchSize, NotificationService.FCM_BATCH_SIZE))).isEmpty()) {
+                dispatch(batch);
+            }
+        } catch (Exception e) {
+            log.error("Notification worker failed: {}", e.getMessage());
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    void dispatch(List<NotificationOutbox> batch) {
+        Set<Long> recipientIds = new HashSet<>();
+        for (NotificationOutbox notification : batch) {
+            recipientIds.add(notification.getRecipientId());
+        }
+        Map<Long, String> tokens = new HashMap<>();
+        for (User user : userRepository.findAllById(recipientIds)) {
+            if (user.getFcmToken() != null && !user.getFcmToken().isEmpty()) {
+                tokens.put(user.getId(), user.getFcmToken());
+            }
+        }
+
+        List<NotificationOutbox> sendable = new ArrayList<>();
+        List<Message> messages = new ArrayList<>();
+        List<String> messageTokens = new ArrayList<>();
+        for (NotificationOutbox notification : batch) {
+            String token = tokens.get(notification.getRecipientId());
+            if (token == null) {
+                outboxService.markFailed(notification, "No FCM token", false);
+                continue;
+            }
+            try {
+                messages.add(notificationService.toMessage(notification, token, outboxService.fromJson(notification.getData())));
+            } catch (RuntimeException e) {
+                outboxService.markFailed(notification, e.getMessage(), false);
+                continue;
+            }
+            sendable.add(notification);
+            messageTokens.add(token);
+        }
+        if (messages.isEmpty()) return;
+
+        acquire(messages.size());
+
+        List<NotificationService.DeliveryResult> results;
+        try {
+            results = notificationService.sendEach(messages, messageTokens);
+        } catch (Exception e) {
+            // The whole batch call failed (network, quota): retry every message later
+            for (NotificationOutbox notification : sendable) {
+                outboxService.markFailed(notification, e.getMessage(), true);
+            }
+            return;
+        }
+
+        List<Long> sent = new ArrayList<>();
+        for (int i = 0; i < sendable.size(); i++) {
+            NotificationOutbox notification = sendable.get(i);
+            switch (results.get(i)) {
+                case SENT -> sent.add(notification.getId());
+                case UNREGISTERED -> outboxService.markFailed(notification, "FCM token unregistered", false);
+                default -> outboxService.markFailed(notification, "FCM send failed", true);
+            }
+        }
+        outboxService.markSent(sent);
+        log.debug("Dispatched {} notifications ({} sent)", sendable.size(), sent.size());
+    }
+
+    /**
+     * Block until {@code permits} sends fit in the global rate. The reservation is
+     * taken under the lock; the wait happens outside it.
+     */
+    private void acquire(int permits) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxPerSecond);
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextFreeNanos);
+            nextFreeNanos = start + permits * intervalNanos;
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.safra.safra.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safra.safra.entity.NotificationOutbox;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage side of the notification outbox.
+ *
+ * enqueue() uses the caller's transaction (JdbcTemplate joins the JPA transaction), so
+ * a notification exists if and only if the change that caused it was committed.
+ * Rows are claimed with FOR UPDATE SKIP LOCKED and a short lease, so several
+ * dispatcher threads and application nodes can drain the table without double sends.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationOutboxService {
+
+    private static final String INSERT_SQL = "INSERT INTO notification_outbox " +
+            "(idempotency_key, type, recipient_id, title, body, data, high_priority, color, status, attempts, next_attempt_at, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 'PENDING', 0, now(), now()) " +
+            "ON CONFLICT (idempotency_key) DO NOTHING";
+
+    private static final String CLAIM_SQL = "UPDATE notification_outbox SET locked_until = now() + make_interval(secs => ?), " +
+            "attempts = attempts + 1 " +
+            "WHERE id IN (SELECT id FROM notification_outbox " +
+            "  WHERE status = 'PENDING' AND next_attempt_at <= now() AND (locked_until IS NULL OR locked_until < now()) " +
+            "  ORDER BY next_attempt_at LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, idempotency_key, type, recipient_id, title, body, data, high_priority, color, attempts";
+
+    private static final TypeReference<Map<String, String>> DATA_TYPE = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${notifications.outbox.lease-seconds:60}")
+    private int leaseSeconds;
+
+    @Value("${notifications.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${notifications.outbox.backoff-base-seconds:5}")
+    private long backoffBaseSeconds;
+
+    @Value("${notifications.outbox.backoff-max-seconds:3600}")
+    private long backoffMaxSeconds;
+
+    @Value("${notifications.outbox.retention-days:7}")
+    private int retentionDays;
+
+    /**
+     * Queue notifications; rows whose idempotency key already exists are ignored
+     */
+    public void enqueue(List<NotificationOutbox> notifications) {
+        if (notifications.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_SQL, notifications, notifications.size(), (ps, notification) -> {
+            ps.setString(1, notification.getIdempotencyKey());
+            ps.setString(2, notification.getType());
+            ps.setLong(3, notification.getRecipientId());
+            ps.setString(4, notification.getTitle());
+            ps.setString(5, notification.getBody());
+            ps.setString(6, notification.getData());
+            ps.setBoolean(7, notification.isHighPriority());
+            ps.setString(8, notification.getColor());
+        });
+    }
+
+    /**
+     * Lease up to {@code limit} due notifications to the calling worker
+     */
+    public List<NotificationOutbox> claim(int limit) {
+        return jdbcTemplate.query(CLAIM_SQL, CLAIMED_ROW, leaseSeconds, limit);
+    }
+
+    public void markSent(Collection<Long> ids) {
+        if (ids.isEmpty()) return;
+        jdbcTemplate.batchUpdate(
+                "UPDATE notification_outbox SET status = 'SENT', sent_at = now(), locked_until = NULL, last_error = NULL WHERE id = ?",
+                ids.stream().map(id -> new Object[]{id}).toList());
+    }
+
+    /**
+     * Record a failed attempt. Retryable failures are rescheduled with exponential
+     * backoff until max-attempts; everything else is marked FAILED.
+     */
+    public void markFailed(NotificationOutbox notification, String error, boolean retryable) {
+        String message = error == null ? "unknown error" : error.substring(0, Math.min(error.length(), 500));
+        if (retryable && notification.getAttempts() < maxAttempts) {
+            long delay = Math.min(backoffMaxSeconds, backoffBaseSeconds << Math.min(notification.getAttempts() - 1, 20));
+            jdbcTemplate.update(
+                    "UPDATE notification_outbox SET next_attempt_at = ?, locked_until = NULL, last_error = ? WHERE id = ?",
+                    Timestamp.valueOf(LocalDateTime.now().plusSeconds(delay)), message, notification.getId());
+        } else {
+            jdbcTemplate.update(
+                    "UPDATE notification_outbox SET status = 'FAILED', locked_until = NULL, last_error = ? WHERE id = ?",
+                    message, notification.getId());
+            log.warn("Notification {} dropped after {} attempts: {}", notification.getIdempotencyKey(), notification.getAttempts(), message);
+        }
+    }
+
+    public String toJson(Map<String, String> data) {
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Invalid notification data: " + e.getMessage());
+        }
+    }
+
+    public Map<String, String> fromJson(String data) {
+        if (data == null || data.isEmpty()) return Map.of();
+        try {
+            return objectMapper.readValue(data, DATA_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Invalid notification data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete delivered notifications past the retention period
+     */
+    @Scheduled(cron = "0 30 3 * * *")
+    public void purgeSent() {
+        int deleted = jdbcTemplate.update(
+                "DELETE FROM notification_outbox WHERE status = 'SENT' AND sent_at < ?",
+                Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays)));
+        if (deleted > 0) {
+            log.info("Purged {} delivered notifications", deleted);
+        }
+    }
+
+    private static final RowMapper<NotificationOutbox> CLAIMED_ROW = (rs, rowNum) -> NotificationOutbox.builder()
+            .id(rs.getLong("id"))
+            .idempotencyKey(rs.getString("idempotency_key"))
+            .type(rs.getString("type"))
+            .recipientId(rs.getLong("recipient_id"))
+            .title(rs.getString("title"))
+            .body(rs.getString("body"))
+            .data(rs.getString("data"))
+            .highPriority(rs.getBoolean("high_priority"))
+            .color(rs.getString("color"))
+            .attempts(rs.getInt("attempts"))
+            .build();
+}
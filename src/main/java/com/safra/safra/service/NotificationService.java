@@ -1,202 +1,189 @@
 package com.safra.safra.service;
 
 import com.google.firebase.messaging.*;
+import com.safra.safra.entity.NotificationOutbox;
 import com.safra.safra.entity.Trip;
 import com.safra.safra.entity.User;
-import com.safra.safra.repository.TripRepository;
+import com.safra.safra.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+
+/**
+ * Push notifications through FCM.
+ *
+ * Booking, cancellation and rating notifications are written to the outbox in the
+ * caller's transaction and delivered by NotificationDispatcher. Messages are sent in
+ * batches of up to 500 (sendEach); tokens that FCM reports as UNREGISTERED are
+ * cleared from users so they are not retried on every send.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class NotificationService {
 
+    // FCM limit for sendEach
+    static final int FCM_BATCH_SIZE = 500;
+
     private final FirebaseMessaging firebaseMessaging;
-    private final TripRepository tripRepository; // This will be injected by Lombok
+    private final UserRepository userRepository;
+    private final NotificationOutboxService outboxService;
+
+    enum DeliveryResult { SENT, UNREGISTERED, FAILED }
 
     /**
-     * Send booking confirmation notification
+     * Queue booking confirmation notification (delivered by NotificationDispatcher).
+     * Keyed by the ride request, so a passenger accepted again on the same trip after
+     * leaving it is notified again.
      */
-    @Async
-    public void sendBookingConfirmation(User passenger, Trip trip) {
-        try {
-            String token = passenger.getFcmToken();
-            if (token == null || token.isEmpty()) {
-                log.warn("No FCM token for user: {}", passenger.getId());
-                return;
-            }
+    public void sendBookingConfirmation(User passenger, Trip trip, Long requestId) {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", "BOOKING_CONFIRMED");
+        data.put("tripId", trip.getId().toString());
+        data.put("requestId", requestId.toString());
+        data.put("driverName", trip.getDriver().getName());
+        data.put("startTime", trip.getStartTime().toString());
+
+        outboxService.enqueue(List.of(outboxEntry("BOOKING_CONFIRMED", requestReference(requestId), passenger.getId(),
+                "🎉 Booking Confirmed!",
+                String.format("Your ride with %s is confirmed for %s",
+                        trip.getDriver().getName(),
+                        formatTime(trip.getStartTime())),
+                data, true, "#673AB7")));
+    }
 
+    /**
+     * Queue booking confirmations for several passengers of one trip (batch accept),
+     * passengers keyed by their accepted ride request id
+     */
+    public void sendBookingConfirmations(Long tripId, String driverName, LocalDateTime startTime,
+                                         Map<Long, Long> passengerIdsByRequest) {
+        String body = String.format("Your ride with %s is confirmed for %s", driverName, formatTime(startTime));
+        List<NotificationOutbox> entries = new ArrayList<>();
+        passengerIdsByRequest.forEach((requestId, passengerId) -> {
             Map<String, String> data = new HashMap<>();
             data.put("type", "BOOKING_CONFIRMED");
-            data.put("tripId", trip.getId().toString());
-            data.put("driverName", trip.getDriver().getName());
-            data.put("startTime", trip.getStartTime().toString());
-
-            Message message = Message.builder()
-                    .setToken(token)
-                    .setNotification(Notification.builder()
-                            .setTitle("🎉 Booking Confirmed!")
-                            .setBody(String.format("Your ride with %s is confirmed for %s",
-                                    trip.getDriver().getName(),
-                                    formatTime(trip.getStartTime())))
-                            .build())
-                    .putAllData(data)
-                    .setAndroidConfig(AndroidConfig.builder()
-                            .setPriority(AndroidConfig.Priority.HIGH)
-                            .setNotification(AndroidNotification.builder()
-                                    .setSound("default")
-                                    .setColor("#673AB7")
-                                    .setIcon("ic_notification")
-                                    .build())
-                            .build())
-                    .build();
+            data.put("tripId", tripId.toString());
+            data.put("requestId", requestId.toString());
+            data.put("driverName", driverName);
+            data.put("startTime", startTime.toString());
+            entries.add(outboxEntry("BOOKING_CONFIRMED", requestReference(requestId), passengerId,
+                    "🎉 Booking Confirmed!", body, data, true, "#673AB7"));
+        });
+        outboxService.enqueue(entries);
+    }
 
-            firebaseMessaging.send(message);
-            log.info("Booking confirmation sent to user: {}", passenger.getId());
-        } catch (Exception e) {
-            log.error("Failed to send booking confirmation: {}", e.getMessage());
+    /**
+     * Queue trip cancellation notifications for every passenger and the driver
+     */
+    public void sendTripCancellation(Trip trip, Collection<User> passengers, User driver) {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", "TRIP_CANCELLED");
+        data.put("tripId", trip.getId().toString());
+
+        List<NotificationOutbox> entries = new ArrayList<>();
+        for (User passenger : passengers) {
+            entries.add(outboxEntry("TRIP_CANCELLED", trip, passenger,
+                    "❌ Trip Cancelled by Driver",
+                    String.format("Trip with %s has been cancelled", trip.getDriver().getName()),
+                    data, true, "#F44336"));
+        }
+        if (driver != null) {
+            entries.add(outboxEntry("TRIP_CANCELLED", trip, driver,
+                    "❌ Trip Cancelled",
+                    "You have cancelled your trip scheduled for " + formatTime(trip.getStartTime()),
+                    data, true, "#F44336"));
         }
+        outboxService.enqueue(entries);
     }
 
     /**
-     * Send trip cancellation notification
+     * Queue the reminder of one trip for its driver and passengers (see TripReminderService)
      */
-    @Async
-    public void sendTripCancellation(User user, Trip trip, boolean isDriver) {
-        try {
-            String token = user.getFcmToken();
-            if (token == null || token.isEmpty()) return;
-
-            Map<String, String> data = new HashMap<>();
-            data.put("type", "TRIP_CANCELLED");
-            data.put("tripId", trip.getId().toString());
-
-            String title = isDriver ? "Trip Cancelled" : "Trip Cancelled by Driver";
-            String body = isDriver
-                    ? "You have cancelled your trip scheduled for " + formatTime(trip.getStartTime())
-                    : String.format("Trip with %s has been cancelled", trip.getDriver().getName());
-
-            Message message = Message.builder()
-                    .setToken(token)
-                    .setNotification(Notification.builder()
-                            .setTitle("❌ " + title)
-                            .setBody(body)
-                            .build())
-                    .putAllData(data)
-                    .setAndroidConfig(AndroidConfig.builder()
-                            .setPriority(AndroidConfig.Priority.HIGH)
-                            .setNotification(AndroidNotification.builder()
-                                    .setSound("default")
-                                    .setColor("#F44336")
-                                    .build())
-                            .build())
-                    .build();
-
-            firebaseMessaging.send(message);
-        } catch (Exception e) {
-            log.error("Failed to send cancellation notification: {}", e.getMessage());
+    public void queueTripReminder(Long tripId, LocalDateTime startTime, Long driverId, String driverName,
+                                  Collection<Long> passengerIds, int offsetMinutes) {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", "TRIP_REMINDER");
+        data.put("tripId", tripId.toString());
+
+        String type = "TRIP_REMINDER_" + offsetMinutes;
+        String leadTime = formatLeadTime(Duration.between(LocalDateTime.now(), startTime).toMinutes());
+
+        List<NotificationOutbox> entries = new ArrayList<>();
+        entries.add(outboxEntry(type, tripId, driverId,
+                "🚗 Your trip starts soon!",
+                String.format("Your ride starts in %s at %s", leadTime, formatTime(startTime)),
+                data, true, "#FF9800"));
+        for (Long passengerId : passengerIds) {
+            entries.add(outboxEntry(type, tripId, passengerId,
+                    "🚗 Trip Reminder",
+                    String.format("Your ride with %s starts in %s at %s", driverName, leadTime, formatTime(startTime)),
+                    data, true, "#FF9800"));
         }
+        outboxService.enqueue(entries);
     }
 
     /**
-     * Send trip reminder (1 hour before)
-     * Runs every 5 minutes to check for upcoming trips
+     * Queue the same notification about a trip for several users (bulk lifecycle changes)
      */
-    @Scheduled(fixedRate = 300000) // 5 minutes
-    public void sendTripReminders() {
-        try {
-            LocalDateTime now = LocalDateTime.now();
-
-            // Find trips starting in approximately 1 hour
-            List<Trip> upcomingTrips = tripRepository.findByStartTimeBetween(
-                    now.plusMinutes(55),
-                    now.plusMinutes(65)
-            );
-
-            log.info("Found {} upcoming trips for reminders", upcomingTrips.size());
-
-            for (Trip trip : upcomingTrips) {
-                // Only send reminders for trips that are OPEN or SCHEDULED
-                if (!"OPEN".equals(trip.getStatus()) && !"SCHEDULED".equals(trip.getStatus())) {
-                    continue;
-                }
-
-                // Send to driver
-                sendTripReminder(trip.getDriver(), trip, true);
-
-                // Send to all passengers
-                for (User passenger : trip.getPassengers()) {
-                    sendTripReminder(passenger, trip, false);
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error sending trip reminders: {}", e.getMessage(), e);
+    public void queueTripNotification(String type, Long tripId, Collection<Long> recipientIds,
+                                      String title, String body, boolean highPriority, String color) {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", type);
+        data.put("tripId", tripId.toString());
+
+        List<NotificationOutbox> entries = new ArrayList<>();
+        for (Long recipientId : recipientIds) {
+            entries.add(outboxEntry(type, tripId, recipientId, title, body, data, highPriority, color));
         }
+        outboxService.enqueue(entries);
     }
 
-    @Async
-    private void sendTripReminder(User user, Trip trip, boolean isDriver) {
-        try {
-            String token = user.getFcmToken();
-            if (token == null || token.isEmpty()) return;
-
-            Map<String, String> data = new HashMap<>();
-            data.put("type", "TRIP_REMINDER");
-            data.put("tripId", trip.getId().toString());
-
-            String title = isDriver ? "🚗 Your trip starts soon!" : "🚗 Trip Reminder";
-            String body = String.format("Your ride %s in 1 hour at %s",
-                    isDriver ? "starts" : "with " + trip.getDriver().getName() + " starts",
-                    formatTime(trip.getStartTime()));
-
-            Message message = Message.builder()
-                    .setToken(token)
-                    .setNotification(Notification.builder()
-                            .setTitle(title)
-                            .setBody(body)
-                            .build())
-                    .putAllData(data)
-                    .setAndroidConfig(AndroidConfig.builder()
-                            .setPriority(AndroidConfig.Priority.HIGH)
-                            .setNotification(AndroidNotification.builder()
-                                    .setSound("default")
-                                    .setColor("#FF9800")
-                                    .build())
-                            .build())
-                    .build();
+    /**
+     * Queue a notification about a user's account (subscription, payment); referenceId
+     * is the subscription or payment id
+     */
+    public void queueAccountNotification(String type, Long referenceId, Long recipientId,
+                                         String title, String body, String color) {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", type);
+        data.put("referenceId", referenceId.toString());
 
-            firebaseMessaging.send(message);
-        } catch (Exception e) {
-            log.error("Failed to send trip reminder: {}", e.getMessage());
-        }
+        outboxService.enqueue(List.of(outboxEntry(type, referenceId, recipientId, title, body, data, false, color)));
     }
 
     /**
      * Send driver arrival notification
      */
-    @Async
+    @Async("notificationExecutor")
     public void sendDriverArrivalNotification(User passenger, Trip trip, double distanceKm) {
         try {
             String token = passenger.getFcmToken();
-            if (token == null || token.isEmpty()) return;
+            if (!hasToken(token)) return;
 
             Map<String, String> data = new HashMap<>();
             data.put("type", "DRIVER_ARRIVING");
             data.put("tripId", trip.getId().toString());
             data.put("distance", String.valueOf(distanceKm));
 
+            // Runs outside the caller's session: the lazy driver proxy only knows its id
+            String driverName = userRepository.findById(trip.getDriver().getId())
+                    .map(User::getName)
+                    .orElse("Your driver");
             String body = distanceKm < 0.5
-                    ? String.format("%s has arrived at your location!", trip.getDriver().getName())
-                    : String.format("%s is %.1f km away", trip.getDriver().getName(), distanceKm);
+                    ? String.format("%s has arrived at your location!", driverName)
+                    : String.format("%s is %.1f km away", driverName, distanceKm);
 
             Message message = Message.builder()
                     .setToken(token)
@@ -205,59 +192,139 @@ public class NotificationService {
                             .setBody(body)
                             .build())
                     .putAllData(data)
-                    .setAndroidConfig(AndroidConfig.builder()
-                            .setPriority(AndroidConfig.Priority.HIGH)
-                            .setNotification(AndroidNotification.builder()
-                                    .setSound("default")
-                                    .setColor("#4CAF50")
-                                    .build())
-                            .build())
+                    .setAndroidConfig(androidConfig(AndroidConfig.Priority.HIGH, "#4CAF50"))
                     .build();
 
-            firebaseMessaging.send(message);
+            sendEach(List.of(message), List.of(token));
         } catch (Exception e) {
             log.error("Failed to send driver arrival notification: {}", e.getMessage());
         }
     }
 
     /**
-     * Send rating request after trip completion
+     * Queue rating requests for every passenger after trip completion
      */
-    @Async
-    public void sendRatingRequest(User passenger, Trip trip) {
-        try {
-            String token = passenger.getFcmToken();
-            if (token == null || token.isEmpty()) return;
-
-            Map<String, String> data = new HashMap<>();
-            data.put("type", "RATE_TRIP");
-            data.put("tripId", trip.getId().toString());
+    public void sendRatingRequests(Trip trip, Collection<User> passengers) {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", "RATE_TRIP");
+        data.put("tripId", trip.getId().toString());
+
+        List<NotificationOutbox> entries = new ArrayList<>();
+        for (User passenger : passengers) {
+            entries.add(outboxEntry("RATE_TRIP", trip, passenger,
+                    "⭐ Rate Your Trip",
+                    String.format("How was your ride with %s?", trip.getDriver().getName()),
+                    data, false, "#673AB7"));
+        }
+        outboxService.enqueue(entries);
+    }
 
-            Message message = Message.builder()
-                    .setToken(token)
-                    .setNotification(Notification.builder()
-                            .setTitle("⭐ Rate Your Trip")
-                            .setBody(String.format("How was your ride with %s?",
-                                    trip.getDriver().getName()))
-                            .build())
-                    .putAllData(data)
-                    .setAndroidConfig(AndroidConfig.builder()
-                            .setPriority(AndroidConfig.Priority.NORMAL)
-                            .setNotification(AndroidNotification.builder()
-                                    .setSound("default")
-                                    .setColor("#673AB7")
-                                    .build())
-                            .build())
-                    .build();
+    /**
+     * Send individual messages in chunks of 500. tokens.get(i) is the target of
+     * messages.get(i); the result list is in the same order.
+     */
+    List<DeliveryResult> sendEach(List<Message> messages, List<String> tokens) throws FirebaseMessagingException {
+        List<DeliveryResult> results = new ArrayList<>(messages.size());
+        Set<String> unregistered = new HashSet<>();
+        int failures = 0;
+        for (int from = 0; from < messages.size(); from += FCM_BATCH_SIZE) {
+            int to = Math.min(from + FCM_BATCH_SIZE, messages.size());
+            BatchResponse response = firebaseMessaging.sendEach(messages.subList(from, to));
+            failures += response.getFailureCount();
+
+            List<SendResponse> responses = response.getResponses();
+            for (int i = 0; i < responses.size(); i++) {
+                SendResponse sendResponse = responses.get(i);
+                if (sendResponse.isSuccessful()) {
+                    results.add(DeliveryResult.SENT);
+                } else if (sendResponse.getException() != null
+                        && sendResponse.getException().getMessagingErrorCode() == MessagingErrorCode.UNREGISTERED) {
+                    unregistered.add(tokens.get(from + i));
+                    results.add(DeliveryResult.UNREGISTERED);
+                } else {
+                    results.add(DeliveryResult.FAILED);
+                }
+            }
+        }
 
-            firebaseMessaging.send(message);
-        } catch (Exception e) {
-            log.error("Failed to send rating request: {}", e.getMessage());
+        if (failures > 0) {
+            log.warn("FCM: {} of {} notifications failed", failures, messages.size());
         }
+        if (!unregistered.isEmpty()) {
+            int cleared = userRepository.clearFcmTokens(unregistered);
+            log.info("FCM: pruned {} unregistered tokens ({} users)", unregistered.size(), cleared);
+        }
+        return results;
+    }
+
+    /**
+     * Build the FCM message of a queued notification
+     */
+    Message toMessage(NotificationOutbox notification, String token, Map<String, String> data) {
+        return Message.builder()
+                .setToken(token)
+                .setNotification(Notification.builder()
+                        .setTitle(notification.getTitle())
+                        .setBody(notification.getBody())
+                        .build())
+                .putAllData(data)
+                .setAndroidConfig(androidConfig(
+                        notification.isHighPriority() ? AndroidConfig.Priority.HIGH : AndroidConfig.Priority.NORMAL,
+                        notification.getColor()))
+                .build();
+    }
+
+    private NotificationOutbox outboxEntry(String type, Trip trip, User recipient, String title, String body,
+                                           Map<String, String> data, boolean highPriority, String color) {
+        return outboxEntry(type, trip.getId(), recipient.getId(), title, body, data, highPriority, color);
+    }
+
+    private NotificationOutbox outboxEntry(String type, Long referenceId, Long recipientId, String title, String body,
+                                           Map<String, String> data, boolean highPriority, String color) {
+        return outboxEntry(type, referenceId.toString(), recipientId, title, body, data, highPriority, color);
+    }
+
+    private NotificationOutbox outboxEntry(String type, String reference, Long recipientId, String title, String body,
+                                           Map<String, String> data, boolean highPriority, String color) {
+        return NotificationOutbox.builder()
+                .idempotencyKey(type + ":" + reference + ":" + recipientId)
+                .type(type)
+                .recipientId(recipientId)
+                .title(title)
+                .body(body)
+                .data(outboxService.toJson(data))
+                .highPriority(highPriority)
+                .color(color)
+                .build();
+    }
+
+    // Distinct from the trip-id references used before confirmations were per request
+    private static String requestReference(Long requestId) {
+        return "request-" + requestId;
+    }
+
+    private static boolean hasToken(String token) {
+        return token != null && !token.isEmpty();
+    }
+
+    private static AndroidConfig androidConfig(AndroidConfig.Priority priority, String color) {
+        return AndroidConfig.builder()
+                .setPriority(priority)
+                .setNotification(AndroidNotification.builder()
+                        .setSound("default")
+                        .setColor(color)
+                        .build())
+                .build();
+    }
+
+    private static String formatLeadTime(long minutes) {
+        if (minutes >= 90) return (minutes + 30) / 60 + " hours";
+        if (minutes >= 55) return "1 hour";
+        return Math.max(minutes, 1) + " minutes";
     }
 
     private String formatTime(LocalDateTime dateTime) {
         // Format as "MM/dd at h:mma"
         return dateTime.format(java.time.format.DateTimeFormatter.ofPattern("MM/dd 'at' h:mma"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,284 @@
+package com.safra.safra.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safra.safra.cache.TtlCache;
+import com.safra.safra.config.OSRMConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single entry point for OSRM lookups.
+ *
+ * - one shared java.net.http client, so connections to OSRM are kept alive and reused
+ * - lookups are cached (LRU + TTL) on coordinates rounded to osrm.coordinate-precision:
+ *   distances as parsed numbers, full route bodies (large: geometry and steps) in a
+ *   separate cache bounded by osrm.route-cache-max-entries; /table bodies are not kept
+ * - concurrent identical lookups share one upstream call
+ * - per operation call/error/latency counters, exposed through {@link #getStats()}
+ */
+@Component
+@Slf4j
+public class OSRMClient {
+
+    private final OSRMConfig config;
+    private final ObjectMapper objectMapper;
+    private final RestTemplate restTemplate;
+    // Raw /route bodies with geometry and steps, tens to hundreds of KB each
+    private final TtlCache<String, String> routes;
+    // Point to point distances, fed by single route lookups and by /table results
+    private final TtlCache<String, Double> pairDistances;
+
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, OperationStats> stats = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public OSRMClient(OSRMConfig config, ObjectMapper objectMapper) {
+        this.config = config;
+        this.objectMapper = objectMapper;
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeout()))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(config.getReadTimeout()));
+        this.restTemplate = new RestTemplate(requestFactory);
+
+        this.routes = new TtlCache<>(config.getRouteCacheMaxEntries(), Duration.ofMinutes(config.getCacheTtlMinutes()));
+        this.pairDistances = new TtlCache<>(config.getCacheMaxEntries(), Duration.ofMinutes(config.getCacheTtlMinutes()));
+    }
+
+    /**
+     * Full driving route (GeoJSON geometry and steps), as the raw OSRM response
+     */
+    public String getRoute(double startLat, double startLng, double endLat, double endLng) {
+        String coordinates = coordinates(startLat, startLng, endLat, endLng);
+        return fetch("route", coordinates, routes,
+                "/route/v1/driving/" + coordinates + "?overview=full&geometries=geojson&steps=true");
+    }
+
+    /**
+     * Driving distance in meters
+     */
+    public double getDistanceMeters(double startLat, double startLng, double endLat, double endLng) {
+        String coordinates = coordinates(startLat, startLng, endLat, endLng);
+        Double cached = pairDistances.get(coordinates);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+
+        String body = fetch("distance", coordinates, null, "/route/v1/driving/" + coordinates + "?overview=false");
+        try {
+            JsonNode route = objectMapper.readTree(body).path("routes").path(0);
+            if (route.isMissingNode()) {
+                throw new RuntimeException("OSRM returned no route");
+            }
+            double distance = route.path("distance").asDouble();
+            pairDistances.put(coordinates, distance);
+            return distance;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid OSRM response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Driving distance in meters if it is already cached, without calling OSRM
+     */
+    public OptionalDouble getCachedDistanceMeters(double startLat, double startLng, double endLat, double endLng) {
+        Double cached = pairDistances.get(coordinates(startLat, startLng, endLat, endLng));
+        if (cached == null) return OptionalDouble.empty();
+        cacheHits.increment();
+        return OptionalDouble.of(cached);
+    }
+
+    /**
+     * Driving distances in meters from every source to every destination, with a single
+     * /table request. Points are {lat, lng}; unreachable pairs are NaN.
+     */
+    public double[][] getDistanceTable(List<double[]> sources, List<double[]> destinations) {
+        double[] latLngPairs = new double[(sources.size() + destinations.size()) * 2];
+        int i = 0;
+        for (double[] point : sources) {
+            latLngPairs[i++] = point[0];
+            latLngPairs[i++] = point[1];
+        }
+        for (double[] point : destinations) {
+            latLngPairs[i++] = point[0];
+            latLngPairs[i++] = point[1];
+        }
+        String coordinates = coordinates(latLngPairs);
+        String query = "?annotations=distance"
+                + "&sources=" + indexRange(0, sources.size())
+                + "&destinations=" + indexRange(sources.size(), destinations.size());
+        // Distances land in pairDistances below; the body itself is not cached
+        String body = fetch("table", coordinates + query, null, "/table/v1/driving/" + coordinates + query);
+
+        try {
+            JsonNode distances = objectMapper.readTree(body).path("distances");
+            if (!distances.isArray() || distances.size() != sources.size()) {
+                throw new RuntimeException("OSRM returned no distance table");
+            }
+            double[][] result = new double[sources.size()][destinations.size()];
+            for (int s = 0; s < sources.size(); s++) {
+                for (int d = 0; d < destinations.size(); d++) {
+                    JsonNode value = distances.path(s).path(d);
+                    result[s][d] = value.isNumber() ? value.asDouble() : Double.NaN;
+                    if (value.isNumber()) {
+                        pairDistances.put(coordinates(sources.get(s)[0], sources.get(s)[1],
+                                destinations.get(d)[0], destinations.get(d)[1]), result[s][d]);
+                    }
+                }
+            }
+            return result;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid OSRM response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Call counts, cache efficiency and latency per operation
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("routeCacheSize", routes.size());
+        result.put("pairDistanceCacheSize", pairDistances.size());
+        result.put("cacheHits", cacheHits.sum());
+        result.put("cacheMisses", cacheMisses.sum());
+        result.put("coalescedRequests", coalesced.sum());
+        Map<String, Object> operations = new LinkedHashMap<>();
+        stats.forEach((operation, operationStats) -> operations.put(operation, operationStats.toMap()));
+        result.put("operations", operations);
+        return result;
+    }
+
+    public void clearCache() {
+        routes.clear();
+        pairDistances.clear();
+    }
+
+    /**
+     * Coalesced GET of an OSRM path, cached in bodies unless it is null. The key is the
+     * operation plus the rounded coordinates, which are also what gets sent upstream.
+     */
+    String fetch(String operation, String coordinates, TtlCache<String, String> bodies, String path) {
+        String key = operation + ":" + coordinates;
+
+        String cached = bodies == null ? null : bodies.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing);
+        }
+
+        try {
+            String body = timed(operation, () -> restTemplate.getForObject(config.getBaseUrl() + path, String.class));
+            if (body != null && bodies != null) {
+                bodies.put(key, body);
+            }
+            call.complete(body);
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, call);
+        }
+        return join(call);
+    }
+
+    /**
+     * Round a coordinate pair list to the configured precision, OSRM order (lng,lat)
+     */
+    String coordinates(double... latLngPairs) {
+        StringBuilder result = new StringBuilder();
+        String format = "%." + config.getCoordinatePrecision() + "f,%." + config.getCoordinatePrecision() + "f";
+        for (int i = 0; i < latLngPairs.length; i += 2) {
+            if (i > 0) result.append(';');
+            result.append(String.format(Locale.ROOT, format, latLngPairs[i + 1], latLngPairs[i]));
+        }
+        return result.toString();
+    }
+
+    private static String indexRange(int from, int count) {
+        StringJoiner indexes = new StringJoiner(";");
+        for (int i = from; i < from + count; i++) {
+            indexes.add(Integer.toString(i));
+        }
+        return indexes.toString();
+    }
+
+    <T> T timed(String operation, Supplier<T> call) {
+        OperationStats operationStats = stats.computeIfAbsent(operation, o -> new OperationStats());
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            operationStats.errors.increment();
+            log.warn("OSRM {} call failed: {}", operation, e.getMessage());
+            throw e;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000;
+            operationStats.calls.increment();
+            operationStats.totalMicros.add(micros);
+            operationStats.maxMicros.accumulate(micros);
+        }
+    }
+
+    private static String join(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static class OperationStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        Map<String, Object> toMap() {
+            long count = calls.sum();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("calls", count);
+            result.put("errors", errors.sum());
+            result.put("avgMs", count == 0 ? 0 : Math.round(totalMicros.sum() / (double) count) / 1000.0);
+            result.put("maxMs", maxMicros.get() / 1000.0);
+            return result;
+        }
+    }
+}
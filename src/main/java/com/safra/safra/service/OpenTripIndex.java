@@ -0,0 +1,275 @@
+package com.safra.safra.service;
+
+import com.safra.safra.entity.Trip;
+import com.safra.safra.repository.TripRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process spatial index of OPEN trips used to answer passenger searches without
+ * hitting PostgreSQL. Trips are indexed by start location in a JTS quadtree; the
+ * destination is checked on the candidates.
+ *
+ * Writes go through {@link #onTripChanged(Long)}, which reloads the trip once the
+ * surrounding transaction commits. A periodic full rebuild picks up changes made by
+ * other application nodes or by bulk SQL updates.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OpenTripIndex {
+
+    // Same thresholds as TripRepository.findTripsWithinDistance
+    private static final double MAX_DISTANCE_M = 6500;
+    private static final double TIER_DISTANCE_M = 2000;
+    private static final double METERS_PER_DEGREE = 111_320;
+    private static final double EARTH_RADIUS_M = 6_371_000;
+
+    private final TripRepository tripRepository;
+
+    @Value("${trips.search.in-memory:true}")
+    private boolean enabled;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Quadtree startTree = new Quadtree();
+    private Map<Long, IndexedTrip> indexedTrips = new HashMap<>();
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Reload every OPEN trip and swap the index atomically
+     */
+    @Scheduled(fixedDelayString = "${trips.search.index-rebuild-ms:300000}",
+            initialDelayString = "${trips.search.index-rebuild-ms:300000}")
+    public void rebuild() {
+        if (!enabled) return;
+
+        long start = System.currentTimeMillis();
+        try {
+            List<Trip> openTrips = tripRepository.findOpenTripsForIndex();
+
+            Quadtree tree = new Quadtree();
+            Map<Long, IndexedTrip> byId = new HashMap<>();
+            for (Trip trip : openTrips) {
+                IndexedTrip entry = IndexedTrip.of(trip);
+                if (entry != null) {
+                    tree.insert(entry.envelope(), entry);
+                    byId.put(trip.getId(), entry);
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                startTree = tree;
+                indexedTrips = byId;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("🗺️ Open trip index rebuilt: {} trips in {} ms", byId.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Failed to rebuild open trip index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Re-index a trip after it was created or modified. When called inside a
+     * transaction the reload happens after commit, so rolled back changes never
+     * reach the index.
+     */
+    public void onTripChanged(Long tripId) {
+        if (!enabled || tripId == null) return;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reload(tripId);
+                }
+            });
+        } else {
+            reload(tripId);
+        }
+    }
+
+    public void remove(Long tripId) {
+        lock.writeLock().lock();
+        try {
+            IndexedTrip removed = indexedTrips.remove(tripId);
+            if (removed != null) {
+                startTree.remove(removed.envelope(), removed);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop OPEN trips whose start time is before the cutoff (expired trips)
+     */
+    public void removeStartedBefore(LocalDateTime cutoff) {
+        lock.writeLock().lock();
+        try {
+            indexedTrips.values().removeIf(entry -> {
+                LocalDateTime startTime = entry.trip.getStartTime();
+                if (startTime != null && startTime.isBefore(cutoff)) {
+                    startTree.remove(entry.envelope(), entry);
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Same semantics as TripRepository.findTripsWithinDistance: both ends within 6.5 km,
+     * ordered by "both ends within 2 km", then "one end within 2 km", then by the sum
+     * of both distances.
+     */
+    public List<SearchHit> search(double departureLat, double departureLng,
+                                  double destinationLat, double destinationLng) {
+        double latDelta = MAX_DISTANCE_M / METERS_PER_DEGREE;
+        double lngDelta = MAX_DISTANCE_M / (METERS_PER_DEGREE * Math.cos(Math.toRadians(departureLat)));
+        Envelope searchArea = new Envelope(
+                departureLng - lngDelta, departureLng + lngDelta,
+                departureLat - latDelta, departureLat + latDelta);
+
+        List<SearchHit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Object candidate : startTree.query(searchArea)) {
+                IndexedTrip entry = (IndexedTrip) candidate;
+                double startDistance = haversineMeters(departureLat, departureLng, entry.startLat, entry.startLng);
+                if (startDistance > MAX_DISTANCE_M) continue;
+
+                double endDistance = haversineMeters(destinationLat, destinationLng, entry.endLat, entry.endLng);
+                if (endDistance > MAX_DISTANCE_M) continue;
+
+                hits.add(new SearchHit(entry.trip, startDistance, endDistance));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        hits.sort(Comparator.comparingInt(SearchHit::getTier)
+                .thenComparingDouble(hit -> hit.startDistance + hit.endDistance));
+        return hits;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return indexedTrips.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void reload(Long tripId) {
+        try {
+            Trip trip = tripRepository.findOpenTripForIndex(tripId).orElse(null);
+            IndexedTrip entry = trip != null ? IndexedTrip.of(trip) : null;
+
+            lock.writeLock().lock();
+            try {
+                IndexedTrip previous = indexedTrips.remove(tripId);
+                if (previous != null) {
+                    startTree.remove(previous.envelope(), previous);
+                }
+                if (entry != null) {
+                    startTree.insert(entry.envelope(), entry);
+                    indexedTrips.put(tripId, entry);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            // The periodic rebuild will repair the entry
+            log.warn("Failed to re-index trip {}: {}", tripId, e.getMessage());
+        }
+    }
+
+    private static double haversineMeters(double lat1, double lng1, double lat2, double lng2) {
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lngDistance = Math.toRadians(lng2 - lng1);
+
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(lngDistance / 2) * Math.sin(lngDistance / 2);
+
+        return EARTH_RADIUS_M * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class SearchHit {
+        private final Trip trip;
+        private final double startDistance; // meters
+        private final double endDistance;   // meters
+
+        public int getTier() {
+            if (startDistance <= TIER_DISTANCE_M && endDistance <= TIER_DISTANCE_M) return 1;
+            if (startDistance <= TIER_DISTANCE_M || endDistance <= TIER_DISTANCE_M) return 2;
+            return 3;
+        }
+    }
+
+    private static class IndexedTrip {
+        private final Trip trip;
+        private final double startLat;
+        private final double startLng;
+        private final double endLat;
+        private final double endLng;
+
+        private IndexedTrip(Trip trip) {
+            this.trip = trip;
+            // JTS points store x = longitude, y = latitude
+            this.startLat = trip.getStartLocation().getY();
+            this.startLng = trip.getStartLocation().getX();
+            this.endLat = trip.getEndLocation().getY();
+            this.endLng = trip.getEndLocation().getX();
+        }
+
+        static IndexedTrip of(Trip trip) {
+            if (trip.getStartLocation() == null || trip.getEndLocation() == null) {
+                return null;
+            }
+            return new IndexedTrip(trip);
+        }
+
+        Envelope envelope() {
+            return new Envelope(startLng, startLng, startLat, startLat);
+        }
+    }
+}
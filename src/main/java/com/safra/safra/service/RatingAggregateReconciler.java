@@ -0,0 +1,63 @@
+package com.safra.safra.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the rating aggregates of trips and drivers from trip_ratings.
+ *
+ * The running sums maintained by RatingService are exact as long as every rating goes
+ * through it; this job repairs anything written around it (manual SQL, restores) and
+ * backfills rating_sum for rows rated before the column existed (from trip_ratings, or
+ * from average * count when the ratings themselves are gone). Only rows whose values
+ * differ are rewritten.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RatingAggregateReconciler {
+
+    private static final String RECONCILE_TRIPS_SQL = "UPDATE trips t SET rating_sum = a.sum, total_ratings = a.count, " +
+            "average_rating = ROUND(a.sum::numeric / a.count, 2) " +
+            "FROM (SELECT trip_id, SUM(rating) AS sum, COUNT(*) AS count FROM trip_ratings GROUP BY trip_id) a " +
+            "WHERE t.id = a.trip_id " +
+            "AND (t.rating_sum IS DISTINCT FROM a.sum OR t.total_ratings IS DISTINCT FROM a.count::int)";
+
+    private static final String RECONCILE_DRIVERS_SQL = "UPDATE users u SET rating_sum = a.sum, total_ratings = a.count, " +
+            "average_rating = ROUND(a.sum::numeric / a.count, 2) " +
+            "FROM (SELECT t.driver_id, SUM(r.rating) AS sum, COUNT(*) AS count " +
+            "      FROM trip_ratings r JOIN trips t ON t.id = r.trip_id GROUP BY t.driver_id) a " +
+            "WHERE u.id = a.driver_id " +
+            "AND (u.rating_sum IS DISTINCT FROM a.sum OR u.total_ratings IS DISTINCT FROM a.count::int)";
+
+    // Rows with a count but no sum and no trip_ratings rows to rebuild them from
+    private static final String BACKFILL_SUM_SQL = "UPDATE %s SET rating_sum = ROUND(COALESCE(average_rating, 0) * total_ratings) " +
+            "WHERE rating_sum IS NULL AND total_ratings > 0";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reconcile();
+    }
+
+    @Scheduled(cron = "${ratings.reconcile-cron:0 15 4 * * *}")
+    public void reconcile() {
+        try {
+            long start = System.currentTimeMillis();
+            int trips = jdbcTemplate.update(RECONCILE_TRIPS_SQL);
+            int drivers = jdbcTemplate.update(RECONCILE_DRIVERS_SQL);
+            trips += jdbcTemplate.update(BACKFILL_SUM_SQL.formatted("trips"));
+            drivers += jdbcTemplate.update(BACKFILL_SUM_SQL.formatted("users"));
+            log.info("⭐ Rating aggregates reconciled: {} trips and {} drivers corrected in {} ms",
+                    trips, drivers, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Failed to reconcile rating aggregates: {}", e.getMessage());
+        }
+    }
+}
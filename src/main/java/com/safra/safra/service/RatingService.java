@@ -1,5 +1,14 @@
 package com.safra.safra.service;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import com.safra.safra.cache.TtlCache;
+import com.safra.safra.dto.DriverRatingSummaryDTO;
+import com.safra.safra.dto.RatingFeedItemDTO;
+import com.safra.safra.dto.RatingFeedPageDTO;
+import com.safra.safra.dto.RatingSummaryProjection;
 import com.safra.safra.entity.Trip;
 import com.safra.safra.entity.TripRating;
 import com.safra.safra.entity.User;
@@ -8,7 +17,10 @@ import com.safra.safra.repository.TripRepository;
 import com.safra.safra.repository.UserRepository;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Service
 @RequiredArgsConstructor
@@ -18,6 +30,11 @@ public class RatingService {
     private final TripRepository tripRepository;
     private final UserRepository userRepository;
 
+    @Value("${ratings.summary.recent-window-days:90}")
+    private int recentWindowDays;
+
+    private final TtlCache<Long, DriverRatingSummaryDTO> summaryCache = new TtlCache<>(10_000, Duration.ofMinutes(10));
+
     @Transactional
     public TripRating rateTrip(Long tripId, Long passengerId, Integer rating, String comment) {
         // Validate rating
@@ -59,60 +76,89 @@ public class RatingService {
 
         tripRating = ratingRepository.save(tripRating);
 
-        // Update trip average rating
-        updateTripRating(trip);
-
-        // Update driver average rating
-        updateDriverRating(trip.getDriver());
+        // O(1) running aggregates on the trip and its driver
+        tripRepository.addRating(tripId, rating);
+        userRepository.addRating(trip.getDriver().getId(), rating);
+        invalidateSummaryAfterCommit(trip.getDriver().getId());
 
         return tripRating;
     }
 
-    private void updateTripRating(Trip trip) {
-        List<TripRating> ratings = ratingRepository.findByTripId(trip.getId());
-
-        if (!ratings.isEmpty()) {
-            double average = ratings.stream()
-                    .mapToInt(TripRating::getRating)
-                    .average()
-                    .orElse(0.0);
-
-            trip.setAverageRating(Math.round(average * 100.0) / 100.0); // Round to 2 decimals
-            trip.setTotalRatings(ratings.size());
-            tripRepository.save(trip);
-        }
+    public List<TripRating> getTripRatings(Long tripId) {
+        return ratingRepository.findByTripId(tripId);
     }
 
-    private void updateDriverRating(User driver) {
-        // Get all completed trips by this driver
-        List<Trip> driverTrips = tripRepository.findByDriverIdAndStatus(
-                driver.getId(), Trip.Status.COMPLETED);
-
-        // Get all ratings for these trips
-        double totalRating = 0;
-        int totalCount = 0;
+    public List<TripRating> getDriverRatings(Long driverId) {
+        return ratingRepository.findByTrip_Driver_Id(driverId);
+    }
 
-        for (Trip trip : driverTrips) {
-            if (trip.getAverageRating() != null && trip.getTotalRatings() != null) {
-                totalRating += trip.getAverageRating() * trip.getTotalRatings();
-                totalCount += trip.getTotalRatings();
-            }
+    /**
+     * Cursor-paginated ratings of a driver, newest first, as flat DTOs
+     */
+    public RatingFeedPageDTO getDriverRatingsFeed(Long driverId, String cursor, int limit) {
+        RatingFeedPageDTO.Cursor before = RatingFeedPageDTO.Cursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(limit, 100));
+
+        List<RatingFeedItemDTO> rows = ratingRepository.findDriverRatingsPage(
+                        driverId, before.getCreatedAt(), before.getRatingId(), pageSize + 1).stream()
+                .map(RatingFeedItemDTO::fromProjection)
+                .toList();
+
+        boolean hasMore = rows.size() > pageSize;
+        List<RatingFeedItemDTO> page = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            RatingFeedItemDTO last = page.get(page.size() - 1);
+            nextCursor = new RatingFeedPageDTO.Cursor(last.getCreatedAt(), last.getRatingId()).encode();
         }
 
-        if (totalCount > 0) {
-            double average = totalRating / totalCount;
-            driver.setAverageRating(Math.round(average * 100.0) / 100.0);
-            driver.setTotalRatings(totalCount);
-            userRepository.save(driver);
-        }
+        return RatingFeedPageDTO.builder()
+                .ratings(page)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
     }
 
-    public List<TripRating> getTripRatings(Long tripId) {
-        return ratingRepository.findByTripId(tripId);
+    /**
+     * Histogram and recent average of a driver, computed in one query and cached
+     * until the driver receives a new rating (or the TTL expires)
+     */
+    public DriverRatingSummaryDTO getDriverRatingSummary(Long driverId) {
+        return summaryCache.computeIfAbsent(driverId, id -> {
+            RatingSummaryProjection row = ratingRepository.summarizeDriverRatings(
+                    id, LocalDateTime.now().minusDays(recentWindowDays));
+
+            Map<Integer, Long> histogram = new LinkedHashMap<>();
+            histogram.put(1, row.getStars1());
+            histogram.put(2, row.getStars2());
+            histogram.put(3, row.getStars3());
+            histogram.put(4, row.getStars4());
+            histogram.put(5, row.getStars5());
+
+            long total = row.getTotal();
+            return DriverRatingSummaryDTO.builder()
+                    .driverId(id)
+                    .averageRating(total == 0 ? null : Math.round(row.getRatingSum() * 100.0 / total) / 100.0)
+                    .totalRatings((int) total)
+                    .histogram(histogram)
+                    .recentAverage(row.getRecentAverage() == null ? null : Math.round(row.getRecentAverage() * 100.0) / 100.0)
+                    .recentCount(row.getRecentCount())
+                    .recentWindowDays(recentWindowDays)
+                    .build();
+        });
     }
 
-    public List<TripRating> getDriverRatings(Long driverId) {
-        return ratingRepository.findByTrip_Driver_Id(driverId);
+    private void invalidateSummaryAfterCommit(Long driverId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    summaryCache.invalidate(driverId);
+                }
+            });
+        } else {
+            summaryCache.invalidate(driverId);
+        }
     }
 
     public boolean hasUserRatedTrip(Long tripId, Long passengerId) {
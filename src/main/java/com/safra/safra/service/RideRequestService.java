@@ -1,5 +1,10 @@
 package com.safra.safra.service;
 
+import com.safra.safra.cache.TtlCache;
+import com.safra.safra.dto.RideRequestBatchDTO;
+import com.safra.safra.dto.RideRequestBatchResultDTO;
+import com.safra.safra.dto.RideRequestInboxItemDTO;
+import com.safra.safra.dto.RideRequestInboxPageDTO;
 import com.safra.safra.entity.RequestStatus;
 import com.safra.safra.service.NotificationService;
 
@@ -10,10 +15,31 @@ import com.safra.safra.repository.RideRequestRepository;
 import com.safra.safra.repository.TripRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -22,14 +48,60 @@ public class RideRequestService {
     private final RideRequestRepository rideRequestRepository;
     private final TripRepository tripRepository;
     private final NotificationService notificationService; // Add this
+    private final SeatReservationService seatReservationService;
+    private final JdbcTemplate jdbcTemplate;
 
-    public RideRequest createRequest(RideRequest rideRequest) {
+    @Value("${ride-requests.batch.max-size:100}")
+    private int maxBatchSize;
+
+    // Driver id -> number of pending requests on their trips (badge counter)
+    private final TtlCache<Long, Long> pendingCounts = new TtlCache<>(10_000, Duration.ofSeconds(30));
+
+    /**
+     * The request a retry of "passenger requests trip" should return: the one created
+     * with the same Idempotency-Key, or else the passenger's live request on the trip.
+     * Null when a new request has to be created.
+     */
+    public RideRequest findExistingRequest(Long tripId, Long passengerId, String idempotencyKey) {
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            Optional<RideRequest> replay = rideRequestRepository.findByPassenger_IdAndIdempotencyKey(passengerId, idempotencyKey);
+            if (replay.isPresent()) {
+                if (!replay.get().getTrip().getId().equals(tripId)) {
+                    throw new RuntimeException("Idempotency-Key already used for another ride request");
+                }
+                return replay.get();
+            }
+        }
+        return rideRequestRepository.findActiveRequest(tripId, passengerId).orElse(null);
+    }
+
+    /**
+     * Create a PENDING request. A concurrent duplicate (same key, or a second live
+     * request of the passenger on the trip) loses on the unique indexes and gets the
+     * request that won instead of a new row.
+     */
+    public RideRequest createRequest(RideRequest rideRequest, String idempotencyKey) {
+        rideRequest.setIdempotencyKey(idempotencyKey == null || idempotencyKey.isBlank() ? null : idempotencyKey);
         rideRequest.setStatus(RequestStatus.PENDING);
         rideRequest.setCreatedAt(LocalDateTime.now());
         rideRequest.setUpdatedAt(LocalDateTime.now());
-        return rideRequestRepository.save(rideRequest);
+
+        Long tripId = rideRequest.getTrip().getId();
+        Long passengerId = rideRequest.getPassenger().getId();
+        RideRequest saved;
+        try {
+            // Own transaction: a unique violation rolls back only this insert
+            saved = rideRequestRepository.saveAndFlush(rideRequest);
+        } catch (DataIntegrityViolationException e) {
+            RideRequest existing = findExistingRequest(tripId, passengerId, rideRequest.getIdempotencyKey());
+            if (existing == null) throw e;
+            return existing;
+        }
+        evictPendingCountAfterCommit(rideRequest.getTrip().getDriver().getId());
+        return saved;
     }
 
+    @Transactional
     public RideRequest acceptRideRequest(Long requestId) {
         RideRequest request = rideRequestRepository.findById(requestId)
                 .orElseThrow(() -> new RuntimeException("Ride request not found"));
@@ -37,38 +109,142 @@ public class RideRequestService {
         Trip trip = request.getTrip();
         User passenger = request.getPassenger();
 
-        if (trip.getAvailableSeats() <= 0) {
-            throw new RuntimeException("No available seats");
+        // Only one accept of a request can win, a second one finds it no longer PENDING
+        if (rideRequestRepository.transitionStatus(requestId, RequestStatus.PENDING.name(), RequestStatus.ACCEPTED.name()) == 0) {
+            throw new RuntimeException("Ride request is no longer pending");
         }
 
-        // Update ride request status
+        // Atomic seat decrement (or the passenger's held seat) + trip_passengers row;
+        // throws "No available seats" and rolls the whole accept back when the trip is full
+        seatReservationService.bookSeat(trip.getId(), passenger.getId());
+
         request.setStatus(RequestStatus.ACCEPTED);
         request.setUpdatedAt(LocalDateTime.now());
+        evictPendingCountAfterCommit(trip.getDriver().getId());
 
-        // Decrease seats
-        trip.setAvailableSeats(trip.getAvailableSeats() - 1);
-
-        // Add passenger to trip_passengers join table
-        trip.getPassengers().add(passenger);
-
-        // Persist changes
-        tripRepository.save(trip);
-        rideRequestRepository.save(request);
-        // After accepting request
-        notificationService.sendBookingConfirmation(passenger, trip);
+        // Queued in this transaction, delivered by NotificationDispatcher after commit
+        notificationService.sendBookingConfirmation(passenger, trip, requestId);
         return request;
     }
 
 
+    @Transactional
     public RideRequest rejectRideRequest(Long requestId) {
         RideRequest request = rideRequestRepository.findById(requestId)
                 .orElseThrow(() -> new RuntimeException("Ride request not found"));
 
+        if (rideRequestRepository.transitionStatus(requestId, RequestStatus.PENDING.name(), RequestStatus.REJECTED.name()) == 0) {
+            throw new RuntimeException("Ride request is no longer pending");
+        }
+        // Give back the seat the passenger may have been holding
+        seatReservationService.releaseHold(request.getTrip().getId(), request.getPassenger().getId());
+
         request.setStatus(RequestStatus.REJECTED);
         request.setUpdatedAt(LocalDateTime.now());
+        evictPendingCountAfterCommit(request.getTrip().getDriver().getId());
+        return request;
+    }
+    /**
+     * Accept and reject several requests of one trip in a single transaction. Pending
+     * requests are locked in id order (same order as single accepts), seat capacity is
+     * checked once for all accepted passengers, status changes and passenger rows are
+     * written as JDBC batches and the confirmations are queued as one notification
+     * round. Fails as a whole when the accepted passengers do not fit in the trip.
+     */
+    @Transactional
+    public RideRequestBatchResultDTO decideRideRequests(Long tripId, RideRequestBatchDTO batch) {
+        Set<Long> acceptIds = idSet(batch.getAccept());
+        Set<Long> rejectIds = idSet(batch.getReject());
+        if (acceptIds.isEmpty() && rejectIds.isEmpty()) {
+            throw new RuntimeException("No ride requests given");
+        }
+        if (!Collections.disjoint(acceptIds, rejectIds)) {
+            throw new RuntimeException("A ride request cannot be both accepted and rejected");
+        }
+        if (acceptIds.size() + rejectIds.size() > maxBatchSize) {
+            throw new RuntimeException("At most " + maxBatchSize + " ride requests per batch");
+        }
+
+        Map<String, Object> trip;
+        try {
+            trip = jdbcTemplate.queryForMap(
+                    "SELECT t.start_time, t.driver_id, u.name AS driver_name FROM trips t JOIN users u ON u.id = t.driver_id WHERE t.id = ?",
+                    tripId);
+        } catch (EmptyResultDataAccessException e) {
+            throw new RuntimeException("Trip not found");
+        }
+
+        List<Object> args = new ArrayList<>();
+        args.add(tripId);
+        args.addAll(acceptIds);
+        args.addAll(rejectIds);
+        Map<Long, Long> pendingPassengers = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT id, passenger_id FROM ride_requests WHERE trip_id = ? AND status = 'PENDING' " +
+                        "AND id IN (" + String.join(",", Collections.nCopies(args.size() - 1, "?")) + ") " +
+                        "ORDER BY id FOR UPDATE",
+                (RowCallbackHandler) rs -> pendingPassengers.put(rs.getLong("id"), rs.getLong("passenger_id")),
+                args.toArray());
+        Set<Long> seated = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT user_id FROM trip_passengers WHERE trip_id = ?", Long.class, tripId));
+
+        List<Long> accepted = new ArrayList<>();
+        List<Long> acceptedPassengers = new ArrayList<>();
+        List<Long> rejected = new ArrayList<>();
+        List<Long> rejectedPassengers = new ArrayList<>();
+        List<Long> skipped = new ArrayList<>();
+        for (Long requestId : acceptIds) {
+            Long passengerId = pendingPassengers.get(requestId);
+            if (passengerId == null || !seated.add(passengerId)) {
+                skipped.add(requestId);
+                continue;
+            }
+            accepted.add(requestId);
+            acceptedPassengers.add(passengerId);
+        }
+        for (Long requestId : rejectIds) {
+            Long passengerId = pendingPassengers.get(requestId);
+            if (passengerId == null) {
+                skipped.add(requestId);
+                continue;
+            }
+            rejected.add(requestId);
+            rejectedPassengers.add(passengerId);
+        }
+
+        // Throws "No available seats" and rolls back the whole batch when it does not fit
+        seatReservationService.bookSeats(tripId, acceptedPassengers);
+        seatReservationService.releaseHolds(tripId, rejectedPassengers);
 
-        return rideRequestRepository.save(request);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> statusArgs = new ArrayList<>(accepted.size() + rejected.size());
+        accepted.forEach(id -> statusArgs.add(new Object[]{RequestStatus.ACCEPTED.name(), now, id}));
+        rejected.forEach(id -> statusArgs.add(new Object[]{RequestStatus.REJECTED.name(), now, id}));
+        if (!statusArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE ride_requests SET status = ?, updated_at = ? WHERE id = ?", statusArgs);
+        }
+
+        if (!statusArgs.isEmpty()) {
+            evictPendingCountAfterCommit(((Number) trip.get("driver_id")).longValue());
+        }
+        if (!accepted.isEmpty()) {
+            Map<Long, Long> passengerIdsByRequest = new LinkedHashMap<>();
+            for (int i = 0; i < accepted.size(); i++) {
+                passengerIdsByRequest.put(accepted.get(i), acceptedPassengers.get(i));
+            }
+            notificationService.sendBookingConfirmations(tripId, (String) trip.get("driver_name"),
+                    ((Timestamp) trip.get("start_time")).toLocalDateTime(), passengerIdsByRequest);
+        }
+
+        return RideRequestBatchResultDTO.builder()
+                .tripId(tripId)
+                .accepted(accepted)
+                .rejected(rejected)
+                .skipped(skipped)
+                .availableSeats(seatReservationService.getAvailableSeats(tripId))
+                .build();
     }
+
     public List<RideRequest> getRequestsForDriver(Long driverId) {
         return rideRequestRepository.findByTrip_Driver_Id(driverId);
     }
@@ -76,5 +252,83 @@ public class RideRequestService {
         return rideRequestRepository.findByPassenger_Id(passengerId);
     }
 
-}
+    /**
+     * Requests on a driver's trips, pending first then newest first, as flat DTOs.
+     * status restricts the page to one status.
+     */
+    public RideRequestInboxPageDTO getDriverInbox(Long driverId, RequestStatus status, String cursor, int limit) {
+        RideRequestInboxPageDTO.Cursor before = RideRequestInboxPageDTO.Cursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(limit, 100));
+        return toInboxPage(rideRequestRepository.findDriverInboxPage(driverId, statusFilter(status),
+                        before.isPending(), before.getCreatedAt(), before.getRequestId(), pageSize + 1).stream()
+                .map(RideRequestInboxItemDTO::fromProjection)
+                .toList(), pageSize);
+    }
+
+    /**
+     * Requests made by a passenger, pending first then newest first, as flat DTOs
+     */
+    public RideRequestInboxPageDTO getPassengerInbox(Long passengerId, RequestStatus status, String cursor, int limit) {
+        RideRequestInboxPageDTO.Cursor before = RideRequestInboxPageDTO.Cursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(limit, 100));
+        return toInboxPage(rideRequestRepository.findPassengerInboxPage(passengerId, statusFilter(status),
+                        before.isPending(), before.getCreatedAt(), before.getRequestId(), pageSize + 1).stream()
+                .map(RideRequestInboxItemDTO::fromProjection)
+                .toList(), pageSize);
+    }
+
+    /**
+     * Number of pending requests on a driver's trips, cached for a few seconds and
+     * dropped when one of them is created, accepted or rejected
+     */
+    public long getPendingCountForDriver(Long driverId) {
+        return pendingCounts.computeIfAbsent(driverId, rideRequestRepository::countPendingForDriver);
+    }
 
+    /**
+     * Forget a driver's cached pending count once the current transaction commits
+     */
+    public void evictPendingCountAfterCommit(Long driverId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pendingCounts.invalidate(driverId);
+                }
+            });
+        } else {
+            pendingCounts.invalidate(driverId);
+        }
+    }
+
+    private static RideRequestInboxPageDTO toInboxPage(List<RideRequestInboxItemDTO> rows, int pageSize) {
+        boolean hasMore = rows.size() > pageSize;
+        List<RideRequestInboxItemDTO> page = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            RideRequestInboxItemDTO last = page.get(page.size() - 1);
+            nextCursor = new RideRequestInboxPageDTO.Cursor(RequestStatus.PENDING.name().equals(last.getStatus()),
+                    last.getCreatedAt(), last.getRequestId()).encode();
+        }
+        return RideRequestInboxPageDTO.builder()
+                .requests(page)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private static List<String> statusFilter(RequestStatus status) {
+        if (status != null) {
+            return List.of(status.name());
+        }
+        return Arrays.stream(RequestStatus.values()).map(Enum::name).toList();
+    }
+
+    private static Set<Long> idSet(List<Long> ids) {
+        Set<Long> set = new LinkedHashSet<>();
+        if (ids != null) {
+            ids.stream().filter(Objects::nonNull).forEach(set::add);
+        }
+        return set;
+    }
+}
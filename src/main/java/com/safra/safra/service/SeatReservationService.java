@@ -0,0 +1,260 @@
+package com.safra.safra.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Seat accounting of trips.
+ *
+ * trips.available_seats is only changed here, by single conditional SQL statements:
+ * a seat is taken with "available_seats - 1 WHERE available_seats > 0", so concurrent
+ * bookings serialize on the row and can never overbook. Seat holds take a seat for a
+ * passenger for a few minutes; expired holds give it back through a scheduled job.
+ *
+ * Callers' JPA entities are not refreshed: a Trip loaded before these calls may show
+ * a stale seat count (the column is not updatable from the entity).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatReservationService {
+
+    private static final String RELEASE_EXPIRED_SQL = "WITH expired AS (" +
+            "  DELETE FROM seat_holds WHERE id IN (SELECT id FROM seat_holds WHERE expires_at < now() " +
+            "    ORDER BY expires_at LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "  RETURNING trip_id) " +
+            "UPDATE trips t SET available_seats = t.available_seats + e.seats " +
+            "FROM (SELECT trip_id, count(*) AS seats FROM expired GROUP BY trip_id) e " +
+            "WHERE t.id = e.trip_id " +
+            "RETURNING t.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OpenTripIndex openTripIndex;
+
+    @Value("${seats.hold.default-minutes:10}")
+    private int defaultHoldMinutes;
+
+    @Value("${seats.hold.max-minutes:60}")
+    private int maxHoldMinutes;
+
+    @Value("${seats.hold.release-batch-size:500}")
+    private int releaseBatchSize;
+
+    /**
+     * Hold a seat of the trip for the passenger while their ride request is pending.
+     * Holding again extends the existing hold without taking a second seat, but a hold
+     * never lasts past max-minutes after it was first taken. Returns when the hold expires.
+     */
+    @Transactional
+    public LocalDateTime hold(Long tripId, Long passengerId, Integer minutes) {
+        Boolean pending = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM ride_requests WHERE trip_id = ? AND passenger_id = ? AND status = 'PENDING')",
+                Boolean.class, tripId, passengerId);
+        if (!Boolean.TRUE.equals(pending)) {
+            throw new RuntimeException("No pending ride request for this trip");
+        }
+
+        int holdMinutes = minutes == null ? defaultHoldMinutes : Math.max(1, Math.min(minutes, maxHoldMinutes));
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(holdMinutes);
+
+        List<Timestamp> extended = jdbcTemplate.queryForList(
+                "UPDATE seat_holds SET expires_at = LEAST(?, created_at + make_interval(mins => ?)) " +
+                        "WHERE trip_id = ? AND passenger_id = ? RETURNING expires_at",
+                Timestamp.class, Timestamp.valueOf(expiresAt), maxHoldMinutes, tripId, passengerId);
+        if (!extended.isEmpty()) {
+            return extended.get(0).toLocalDateTime();
+        }
+        if (isOnTrip(tripId, passengerId)) {
+            throw new RuntimeException("Passenger already on this trip");
+        }
+        takeSeat(tripId);
+        // A concurrent hold for the same passenger fails on the unique key and rolls back its seat
+        jdbcTemplate.update(
+                "INSERT INTO seat_holds (trip_id, passenger_id, expires_at, created_at) VALUES (?, ?, ?, now())",
+                tripId, passengerId, Timestamp.valueOf(expiresAt));
+        openTripIndex.onTripChanged(tripId);
+        return expiresAt;
+    }
+
+    /**
+     * Give back a passenger's held seat. Returns false if there was no hold.
+     */
+    @Transactional
+    public boolean releaseHold(Long tripId, Long passengerId) {
+        int deleted = jdbcTemplate.update(
+                "DELETE FROM seat_holds WHERE trip_id = ? AND passenger_id = ?", tripId, passengerId);
+        if (deleted == 0) return false;
+        returnSeat(tripId);
+        openTripIndex.onTripChanged(tripId);
+        return true;
+    }
+
+    /**
+     * Seat the passenger on the trip: consume their hold if they still have one,
+     * otherwise take a free seat. Fails without side effects when the trip is full
+     * or the passenger is already on it (call within the accepting transaction).
+     */
+    @Transactional
+    public void bookSeat(Long tripId, Long passengerId) {
+        int added = jdbcTemplate.update(
+                "INSERT INTO trip_passengers (trip_id, user_id) SELECT ?, ? " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM trip_passengers WHERE trip_id = ? AND user_id = ?)",
+                tripId, passengerId, tripId, passengerId);
+        if (added == 0) {
+            throw new RuntimeException("Passenger already on this trip");
+        }
+
+        int heldSeat = jdbcTemplate.update(
+                "DELETE FROM seat_holds WHERE trip_id = ? AND passenger_id = ?", tripId, passengerId);
+        if (heldSeat == 0) {
+            takeSeat(tripId);
+        }
+        openTripIndex.onTripChanged(tripId);
+    }
+
+    /**
+     * Seat several passengers at once (batch accept). Held seats are consumed and the
+     * rest taken with one conditional decrement, so capacity is checked once for the
+     * whole batch; fails with "No available seats" when it does not fit. Passengers
+     * must not be on the trip yet (the caller filters them).
+     */
+    @Transactional
+    public void bookSeats(Long tripId, List<Long> passengerIds) {
+        if (passengerIds.isEmpty()) return;
+
+        int heldSeats = deleteHolds(tripId, passengerIds);
+
+        int needed = passengerIds.size() - heldSeats;
+        if (needed > 0) {
+            int taken = jdbcTemplate.update(
+                    "UPDATE trips SET available_seats = available_seats - ? WHERE id = ? AND available_seats >= ?",
+                    needed, tripId, needed);
+            if (taken == 0) {
+                throw new RuntimeException("No available seats");
+            }
+        }
+
+        jdbcTemplate.batchUpdate("INSERT INTO trip_passengers (trip_id, user_id) VALUES (?, ?)",
+                passengerIds, passengerIds.size(), (ps, passengerId) -> {
+                    ps.setLong(1, tripId);
+                    ps.setLong(2, passengerId);
+                });
+        openTripIndex.onTripChanged(tripId);
+    }
+
+    /**
+     * Give back the held seats of several passengers (batch reject). Returns the number
+     * of holds released.
+     */
+    @Transactional
+    public int releaseHolds(Long tripId, List<Long> passengerIds) {
+        if (passengerIds.isEmpty()) return 0;
+
+        int released = deleteHolds(tripId, passengerIds);
+        if (released > 0) {
+            jdbcTemplate.update("UPDATE trips SET available_seats = available_seats + ? WHERE id = ?", released, tripId);
+            openTripIndex.onTripChanged(tripId);
+        }
+        return released;
+    }
+
+    /**
+     * Current seat count of a trip
+     */
+    public Integer getAvailableSeats(Long tripId) {
+        return jdbcTemplate.queryForObject("SELECT available_seats FROM trips WHERE id = ?", Integer.class, tripId);
+    }
+
+    /**
+     * Remove a passenger from the trip and free their seat. Returns false if the
+     * passenger was not on the trip.
+     */
+    @Transactional
+    public boolean releaseSeat(Long tripId, Long passengerId) {
+        int removed = jdbcTemplate.update(
+                "DELETE FROM trip_passengers WHERE trip_id = ? AND user_id = ?", tripId, passengerId);
+        if (removed == 0) return false;
+        returnSeat(tripId);
+        openTripIndex.onTripChanged(tripId);
+        return true;
+    }
+
+    /**
+     * Set the seat count of a trip (driver edit). Seats still held are part of the new
+     * count, since their release will give them back: the free count is seats minus the
+     * holds, and holds beyond the new count are dropped (soonest to expire first).
+     */
+    @Transactional
+    public void setAvailableSeats(Long tripId, int seats) {
+        int target = Math.max(0, seats);
+        // Same lock order as releaseExpiredHolds (holds, then trip): waits for a running
+        // release instead of deadlocking with it, then for holds/bookings in progress
+        jdbcTemplate.queryForList("SELECT id FROM seat_holds WHERE trip_id = ? FOR UPDATE", Long.class, tripId);
+        jdbcTemplate.queryForList("SELECT id FROM trips WHERE id = ? FOR UPDATE", Long.class, tripId);
+
+        List<Long> holds = jdbcTemplate.queryForList(
+                "SELECT id FROM seat_holds WHERE trip_id = ? ORDER BY expires_at DESC FOR UPDATE", Long.class, tripId);
+        if (holds.size() > target) {
+            List<Long> dropped = holds.subList(target, holds.size());
+            jdbcTemplate.update("DELETE FROM seat_holds WHERE id IN (" + placeholders(dropped) + ")", dropped.toArray());
+        }
+        jdbcTemplate.update("UPDATE trips SET available_seats = ? WHERE id = ?",
+                target - Math.min(holds.size(), target), tripId);
+    }
+
+    /**
+     * Return the seats of expired holds, in bounded batches
+     */
+    @Scheduled(fixedDelayString = "${seats.hold.release-interval-ms:30000}")
+    @Transactional
+    public void releaseExpiredHolds() {
+        List<Long> tripIds = jdbcTemplate.queryForList(RELEASE_EXPIRED_SQL, Long.class, releaseBatchSize);
+        if (!tripIds.isEmpty()) {
+            tripIds.forEach(openTripIndex::onTripChanged);
+            log.info("💺 Released expired seat holds on {} trips", tripIds.size());
+        }
+    }
+
+    private void takeSeat(Long tripId) {
+        int taken = jdbcTemplate.update(
+                "UPDATE trips SET available_seats = available_seats - 1 WHERE id = ? AND available_seats > 0", tripId);
+        if (taken == 0) {
+            throw new RuntimeException("No available seats");
+        }
+    }
+
+    private void returnSeat(Long tripId) {
+        jdbcTemplate.update("UPDATE trips SET available_seats = available_seats + 1 WHERE id = ?", tripId);
+    }
+
+    private boolean isOnTrip(Long tripId, Long passengerId) {
+        Boolean onTrip = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM trip_passengers WHERE trip_id = ? AND user_id = ?)",
+                Boolean.class, tripId, passengerId);
+        return Boolean.TRUE.equals(onTrip);
+    }
+
+    private int deleteHolds(Long tripId, List<Long> passengerIds) {
+        List<Object> args = new ArrayList<>(passengerIds.size() + 1);
+        args.add(tripId);
+        args.addAll(passengerIds);
+        return jdbcTemplate.update(
+                "DELETE FROM seat_holds WHERE trip_id = ? AND passenger_id IN (" + placeholders(passengerIds) + ")",
+                args.toArray());
+    }
+
+    private static String placeholders(List<Long> ids) {
+        return String.join(",", Collections.nCopies(ids.size(), "?"));
+    }
+}
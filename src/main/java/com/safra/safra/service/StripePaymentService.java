@@ -11,9 +11,9 @@ import com.stripe.exception.SignatureVerificationException;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Event;
 import com.stripe.model.checkout.Session;
+import com.stripe.net.ApiResource;
 import com.stripe.net.Webhook;
 import com.stripe.param.checkout.SessionCreateParams;
-import com.google.gson.Gson;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -132,20 +132,29 @@ public class StripePaymentService {
     }
 
     /**
-     * Handle Stripe webhook events
+     * Verify a webhook delivery and parse its event. Without a configured secret
+     * (local testing) the payload is parsed unverified.
      */
-    @Transactional
-    public void handleWebhookEvent(String payload, String sigHeader) throws SignatureVerificationException {
-        Event event;
-
+    public Event verifyWebhookEvent(String payload, String sigHeader) throws SignatureVerificationException {
         if (webhookSecret != null && !webhookSecret.isEmpty()) {
-            event = Webhook.constructEvent(payload, sigHeader, webhookSecret);
-        } else {
-            // For testing without webhook secret
-            Gson gson = new Gson();
-            event = gson.fromJson(payload, Event.class);
+            return Webhook.constructEvent(payload, sigHeader, webhookSecret);
         }
+        return parseWebhookEvent(payload);
+    }
+
+    /**
+     * Parse a stored webhook payload (already verified when it was received)
+     */
+    public Event parseWebhookEvent(String payload) {
+        return ApiResource.GSON.fromJson(payload, Event.class);
+    }
 
+    /**
+     * Apply a Stripe webhook event (called by StripeWebhookWorker, may run more than
+     * once for the same event)
+     */
+    @Transactional
+    public void processWebhookEvent(Event event) {
         log.info("📩 Stripe webhook event: {}", event.getType());
 
         switch (event.getType()) {
@@ -221,6 +230,10 @@ public class StripePaymentService {
                 .orElseThrow(() -> new RuntimeException("Failed to deserialize session"));
 
         paymentRepository.findByStripeSessionId(session.getId()).ifPresent(payment -> {
+            if (payment.getStatus() != PaymentStatus.PENDING) {
+                log.info("Payment already {}: {}", payment.getStatus(), session.getId());
+                return;
+            }
             payment.setStatus(PaymentStatus.EXPIRED);
             paymentRepository.save(payment);
             log.info("⏰ Payment session expired: {}", session.getId());
@@ -307,19 +320,6 @@ public class StripePaymentService {
                 .collect(Collectors.toList());
     }
 
-    /**
-     * Expire pending payments that have passed expiration time
-     */
-    @Transactional
-    public int expirePendingPayments() {
-        List<StripePayment> expired = paymentRepository.findExpiredPendingPayments(LocalDateTime.now());
-        for (StripePayment payment : expired) {
-            payment.setStatus(PaymentStatus.EXPIRED);
-            paymentRepository.save(payment);
-        }
-        return expired.size();
-    }
-
     // Helper methods
     private String capitalize(String str) {
         if (str == null || str.isEmpty()) return str;
@@ -0,0 +1,137 @@
+package com.safra.safra.service;
+
+import com.safra.safra.entity.StripeWebhookEvent;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Storage side of Stripe webhook ingestion.
+ *
+ * ingest() only verifies the signature and stores the raw event, so the webhook is
+ * acknowledged in one insert whatever the processing costs. The unique Stripe event
+ * id turns redeliveries into no-ops. Rows are claimed by StripeWebhookWorker with
+ * FOR UPDATE SKIP LOCKED and a lease, and retried with exponential backoff.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StripeWebhookService {
+
+    private static final String INSERT_SQL = "INSERT INTO stripe_webhook_events " +
+            "(stripe_event_id, type, payload, status, attempts, next_attempt_at, received_at) " +
+            "VALUES (?, ?, ?, 'PENDING', 0, now(), now()) " +
+            "ON CONFLICT (stripe_event_id) DO NOTHING";
+
+    private static final String CLAIM_SQL = "UPDATE stripe_webhook_events SET locked_until = now() + make_interval(secs => ?), " +
+            "attempts = attempts + 1 " +
+            "WHERE id IN (SELECT id FROM stripe_webhook_events " +
+            "  WHERE status = 'PENDING' AND next_attempt_at <= now() AND (locked_until IS NULL OR locked_until < now()) " +
+            "  ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, stripe_event_id, type, payload, attempts";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StripePaymentService stripePaymentService;
+
+    @Value("${stripe.webhook.lease-seconds:120}")
+    private int leaseSeconds;
+
+    @Value("${stripe.webhook.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${stripe.webhook.backoff-base-seconds:5}")
+    private long backoffBaseSeconds;
+
+    @Value("${stripe.webhook.backoff-max-seconds:3600}")
+    private long backoffMaxSeconds;
+
+    /**
+     * Verify and store a webhook delivery. Returns false if the event was already received.
+     */
+    public boolean ingest(String payload, String sigHeader) throws SignatureVerificationException {
+        Event event = stripePaymentService.verifyWebhookEvent(payload, sigHeader);
+        if (event.getId() == null) {
+            throw new IllegalArgumentException("Stripe event without id");
+        }
+        boolean inserted = jdbcTemplate.update(INSERT_SQL, event.getId(), event.getType(), payload) > 0;
+        if (!inserted) {
+            log.info("Duplicate Stripe event ignored: {}", event.getId());
+        }
+        return inserted;
+    }
+
+    /**
+     * Lease up to {@code limit} due events to the calling worker
+     */
+    public List<StripeWebhookEvent> claim(int limit) {
+        return jdbcTemplate.query(CLAIM_SQL, CLAIMED_ROW, leaseSeconds, limit);
+    }
+
+    /**
+     * Apply one claimed event and record the outcome
+     */
+    public void process(StripeWebhookEvent webhookEvent) {
+        try {
+            stripePaymentService.processWebhookEvent(stripePaymentService.parseWebhookEvent(webhookEvent.getPayload()));
+            jdbcTemplate.update(
+                    "UPDATE stripe_webhook_events SET status = 'PROCESSED', processed_at = now(), locked_until = NULL, last_error = NULL WHERE id = ?",
+                    webhookEvent.getId());
+        } catch (Exception e) {
+            markFailed(webhookEvent, e.getMessage());
+        }
+    }
+
+    /**
+     * Put an event back in the queue, whatever its state (Admin)
+     */
+    public boolean replay(String stripeEventId) {
+        return jdbcTemplate.update(
+                "UPDATE stripe_webhook_events SET status = 'PENDING', attempts = 0, next_attempt_at = now(), " +
+                        "locked_until = NULL, last_error = NULL WHERE stripe_event_id = ?",
+                stripeEventId) > 0;
+    }
+
+    /**
+     * Put every FAILED event back in the queue (Admin)
+     */
+    public int replayFailed() {
+        return jdbcTemplate.update(
+                "UPDATE stripe_webhook_events SET status = 'PENDING', attempts = 0, next_attempt_at = now(), " +
+                        "locked_until = NULL WHERE status = 'FAILED'");
+    }
+
+    private void markFailed(StripeWebhookEvent webhookEvent, String error) {
+        String message = error == null ? "unknown error" : error.substring(0, Math.min(error.length(), 500));
+        if (webhookEvent.getAttempts() < maxAttempts) {
+            long delay = Math.min(backoffMaxSeconds, backoffBaseSeconds << Math.min(webhookEvent.getAttempts() - 1, 20));
+            jdbcTemplate.update(
+                    "UPDATE stripe_webhook_events SET next_attempt_at = ?, locked_until = NULL, last_error = ? WHERE id = ?",
+                    Timestamp.valueOf(LocalDateTime.now().plusSeconds(delay)), message, webhookEvent.getId());
+            log.warn("Stripe event {} failed (attempt {}), retrying in {}s: {}",
+                    webhookEvent.getStripeEventId(), webhookEvent.getAttempts(), delay, message);
+        } else {
+            jdbcTemplate.update(
+                    "UPDATE stripe_webhook_events SET status = 'FAILED', locked_until = NULL, last_error = ? WHERE id = ?",
+                    message, webhookEvent.getId());
+            log.error("❌ Stripe event {} failed after {} attempts: {}",
+                    webhookEvent.getStripeEventId(), webhookEvent.getAttempts(), message);
+        }
+    }
+
+    private static final RowMapper<StripeWebhookEvent> CLAIMED_ROW = (rs, rowNum) -> StripeWebhookEvent.builder()
+            .id(rs.getLong("id"))
+            .stripeEventId(rs.getString("stripe_event_id"))
+            .type(rs.getString("type"))
+            .payload(rs.getString("payload"))
+            .attempts(rs.getInt("attempts"))
+            .build();
+}
@@ -0,0 +1,68 @@
+package com.safra.safra.service;
+
+import com.safra.safra.entity.StripeWebhookEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes stored Stripe webhook events on the webhook pool. Every poll starts up to
+ * {@code workers} drain loops; each claims a small batch and applies the events one
+ * by one (each in its own transaction) until nothing is due.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StripeWebhookWorker {
+
+    private final StripeWebhookService webhookService;
+
+    @Autowired
+    @Qualifier("webhookExecutor")
+    private Executor webhookExecutor;
+
+    @Value("${stripe.webhook.workers:2}")
+    private int workers;
+
+    @Value("${stripe.webhook.batch-size:20}")
+    private int batchSize;
+
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    @Scheduled(fixedDelayString = "${stripe.webhook.poll-interval-ms:1000}")
+    public void poll() {
+        while (activeWorkers.get() < workers) {
+            activeWorkers.incrementAndGet();
+            try {
+                webhookExecutor.execute(this::drain);
+            } catch (RuntimeException e) {
+                activeWorkers.decrementAndGet();
+                log.warn("Could not start Stripe webhook worker: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            List<StripeWebhookEvent> batch;
+            while (!(batch = webhookService.claim(batchSize)).isEmpty()) {
+                for (StripeWebhookEvent event : batch) {
+                    webhookService.process(event);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Stripe webhook worker failed: {}", e.getMessage());
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.safra.safra.service;
+
+import com.safra.safra.event.SubscriptionExpiryEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Side effects of expired subscriptions and payments, per user.
+ * Notifications go to the outbox before commit; the entitlement cache is only
+ * cleared once the expiry is committed.
+ */
+@Component
+@RequiredArgsConstructor
+public class SubscriptionExpiryListener {
+
+    private final NotificationService notificationService;
+    private final SubscriptionService subscriptionService;
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void beforeCommit(SubscriptionExpiryEvent event) {
+        for (Long id : event.getNotifiedIds()) {
+            switch (event.getKind()) {
+                case SUBSCRIPTION -> notificationService.queueAccountNotification("SUBSCRIPTION_EXPIRED", id,
+                        event.getUserId(), "⏰ Subscription Expired",
+                        "Your subscription has ended. Renew it to keep creating trips.", "#FF9800");
+                case PAYMENT -> notificationService.queueAccountNotification("PAYMENT_EXPIRED", id,
+                        event.getUserId(), "⌛ Checkout Expired",
+                        "Your payment session expired before it was completed. You can start a new one anytime.", "#9E9E9E");
+            }
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void afterCommit(SubscriptionExpiryEvent event) {
+        if (event.getKind() == SubscriptionExpiryEvent.Kind.SUBSCRIPTION) {
+            subscriptionService.evictEntitlement(event.getUserId());
+        }
+    }
+}
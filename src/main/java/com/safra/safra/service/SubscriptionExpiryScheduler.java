@@ -0,0 +1,120 @@
+package com.safra.safra.service;
+
+import com.safra.safra.event.SubscriptionExpiryEvent;
+import com.safra.safra.event.SubscriptionExpiryEvent.Kind;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expires subscriptions past their end date and pending payments past their
+ * checkout expiry.
+ *
+ * Each job is a bulk UPDATE ... RETURNING over a bounded chunk of rows claimed with
+ * FOR UPDATE SKIP LOCKED, one transaction per chunk. One SubscriptionExpiryEvent is
+ * published per affected user (see SubscriptionExpiryListener). Only rows that expired
+ * within the notify window are notified: a backlog (first run, long downtime) is
+ * expired silently.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SubscriptionExpiryScheduler {
+
+    private static final String EXPIRE_SUBSCRIPTIONS_SQL = "UPDATE subscriptions SET is_active = false " +
+            "WHERE id IN (SELECT id FROM subscriptions WHERE is_active = true AND end_date < ? " +
+            "  ORDER BY end_date LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, user_id, end_date >= ? AS notify";
+
+    private static final String EXPIRE_PAYMENTS_SQL = "UPDATE stripe_payments SET status = 'EXPIRED' " +
+            "WHERE id IN (SELECT id FROM stripe_payments WHERE status = 'PENDING' AND expires_at < ? " +
+            "  ORDER BY expires_at LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, user_id, expires_at >= ? AS notify";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${subscriptions.expiry.batch-size:500}")
+    private int batchSize;
+
+    // Upper bound of chunks per job and run, the next run picks up the rest
+    @Value("${subscriptions.expiry.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    // Rows that expired longer ago than this are deactivated without a notification
+    @Value("${subscriptions.expiry.notify-window-minutes:60}")
+    private int notifyWindowMinutes;
+
+    @Scheduled(cron = "${subscriptions.expiry.cron:0 */5 * * * *}")
+    public void runExpiryJobs() {
+        expireSubscriptions();
+        expirePendingPayments();
+    }
+
+    public JobReport expireSubscriptions() {
+        return run(Kind.SUBSCRIPTION, EXPIRE_SUBSCRIPTIONS_SQL);
+    }
+
+    public JobReport expirePendingPayments() {
+        return run(Kind.PAYMENT, EXPIRE_PAYMENTS_SQL);
+    }
+
+    private JobReport run(Kind kind, String sql) {
+        long start = System.nanoTime();
+        LocalDateTime startedAt = LocalDateTime.now();
+        Timestamp now = Timestamp.valueOf(startedAt);
+        Timestamp notifyAfter = Timestamp.valueOf(startedAt.minusMinutes(notifyWindowMinutes));
+        int total = 0;
+        try {
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                Integer processed = transactionTemplate.execute(status -> {
+                    Map<Long, List<Long>> idsByUser = new LinkedHashMap<>();
+                    Map<Long, List<Long>> notifiedIdsByUser = new LinkedHashMap<>();
+                    jdbcTemplate.query(sql, rs -> {
+                        Long userId = rs.getLong("user_id");
+                        idsByUser.computeIfAbsent(userId, id -> new ArrayList<>()).add(rs.getLong("id"));
+                        List<Long> notified = notifiedIdsByUser.computeIfAbsent(userId, id -> new ArrayList<>());
+                        if (rs.getBoolean("notify")) {
+                            notified.add(rs.getLong("id"));
+                        }
+                    }, now, batchSize, notifyAfter);
+                    idsByUser.forEach((userId, ids) -> eventPublisher.publishEvent(
+                            new SubscriptionExpiryEvent(kind, userId, ids, notifiedIdsByUser.get(userId))));
+                    return idsByUser.values().stream().mapToInt(List::size).sum();
+                });
+                total += processed == null ? 0 : processed;
+                if (processed == null || processed < batchSize) break;
+            }
+        } catch (Exception e) {
+            log.error("Expiry job {} failed after {} rows: {}", kind, total, e.getMessage());
+        }
+
+        JobReport report = new JobReport(kind, total, (System.nanoTime() - start) / 1_000_000);
+        if (total > 0) {
+            log.info("⏰ Expiry job {}: {} rows in {} ms", kind, report.getProcessed(), report.getDurationMs());
+        }
+        return report;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class JobReport {
+        private final Kind kind;
+        private final int processed;
+        private final long durationMs;
+    }
+}
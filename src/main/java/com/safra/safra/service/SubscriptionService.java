@@ -1,5 +1,6 @@
 package com.safra.safra.service;
 
+import com.safra.safra.cache.TtlCache;
 import com.safra.safra.dto.SubscriptionPurchaseDTO;
 import com.safra.safra.dto.SubscriptionResponseDTO;
 import com.safra.safra.entity.Subscription;
@@ -12,10 +13,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,6 +32,11 @@ public class SubscriptionService {
     private final SubscriptionPlanRepository planRepository;
     private final UserRepository userRepository;
 
+    // Hot path of trip creation and checkout: active subscription per user
+    private final TtlCache<Long, Entitlement> entitlements = new TtlCache<>(10_000, Duration.ofMinutes(15));
+    // Bumped on every invalidation, so a load that raced with one does not stay cached
+    private final AtomicLong entitlementGeneration = new AtomicLong();
+
     /**
      * Get all available (non-archived) subscription plans
      */
@@ -82,6 +92,7 @@ public class SubscriptionService {
                 .build();
 
         subscription = subscriptionRepository.save(subscription);
+        invalidateEntitlementAfterCommit(user.getId());
         log.info("✅ Subscription purchased: User {} bought {} plan", user.getEmail(), plan.getName());
 
         return SubscriptionResponseDTO.fromEntity(subscription);
@@ -105,41 +116,101 @@ public class SubscriptionService {
     }
 
     /**
-     * Check if user can create a trip (has valid subscription with remaining trips)
+     * Check if user can create a trip (has valid subscription with remaining trips).
+     * Answered from the entitlement cache.
      */
     public boolean canUserCreateTrip(Long userId) {
-        Optional<Subscription> activeSubscription = subscriptionRepository.findActiveSubscription(
-                userId, LocalDateTime.now());
-
-        if (activeSubscription.isEmpty()) {
-            return false;
-        }
-
-        Subscription subscription = activeSubscription.get();
-        return subscription.isValid() && subscription.hasRemainingTrips();
+        return getEntitlement(userId).allowsTrip(LocalDateTime.now());
     }
 
     /**
-     * Use a trip from user's subscription (called when creating a trip)
-     * Returns true if successful, throws exception otherwise
+     * Use a trip from user's subscription (called when creating a trip).
+     * A single conditional UPDATE, so concurrent trip creation cannot overspend;
+     * the subscription is only read again to explain a refusal.
      */
     @Transactional
     public void useTrip(Long userId) {
-        Subscription subscription = subscriptionRepository.findActiveSubscription(userId, LocalDateTime.now())
-                .orElseThrow(() -> new RuntimeException("No active subscription found. Please purchase a subscription to create trips."));
+        LocalDateTime now = LocalDateTime.now();
+        if (subscriptionRepository.useTrip(userId, now) == 0) {
+            invalidateEntitlement(userId);
+            Subscription subscription = subscriptionRepository.findActiveSubscription(userId, now)
+                    .orElseThrow(() -> new RuntimeException("No active subscription found. Please purchase a subscription to create trips."));
+            if (!subscription.isValid()) {
+                throw new RuntimeException("Your subscription has expired. Please renew to create trips.");
+            }
+            throw new RuntimeException("You have used all trips in your subscription. Please upgrade or wait for renewal.");
+        }
 
-        if (!subscription.isValid()) {
-            throw new RuntimeException("Your subscription has expired. Please renew to create trips.");
+        // Keep the cached counter in step once the increment is committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recordTripUsed(userId);
+                }
+            });
+        } else {
+            recordTripUsed(userId);
         }
+        log.info("📍 Trip used: User {}", userId);
+    }
 
-        if (!subscription.hasRemainingTrips()) {
-            throw new RuntimeException("You have used all trips in your subscription. Please upgrade or wait for renewal.");
+    /**
+     * Active subscription of a user as cached (remaining trips and end date);
+     * Entitlement.NONE when there is none
+     */
+    public Entitlement getEntitlement(Long userId) {
+        Entitlement cached = entitlements.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = entitlementGeneration.get();
+        Entitlement loaded = subscriptionRepository.findActiveSubscription(userId, LocalDateTime.now())
+                .map(Entitlement::fromEntity)
+                .orElse(Entitlement.NONE);
+        entitlements.put(userId, loaded);
+        // An invalidation during the load may have read the subscription before it
+        // changed; drop what was just cached (a few unrelated misses are the cost)
+        if (entitlementGeneration.get() != generation) {
+            entitlements.invalidate(userId);
+        }
+        return loaded;
+    }
+
+    /**
+     * Drop the cached entitlement of a user (subscription changed outside this service)
+     */
+    public void evictEntitlement(Long userId) {
+        invalidateEntitlement(userId);
+    }
+
+    private void invalidateEntitlement(Long userId) {
+        entitlementGeneration.incrementAndGet();
+        entitlements.invalidate(userId);
+    }
+
+    private void recordTripUsed(Long userId) {
+        long generation = entitlementGeneration.get();
+        Entitlement cached = entitlements.get(userId);
+        if (cached != null && cached != Entitlement.NONE) {
+            entitlements.put(userId, cached.withTripUsed());
+            if (entitlementGeneration.get() != generation) {
+                entitlements.invalidate(userId);
+            }
         }
+    }
 
-        subscription.useTrip();
-        subscriptionRepository.save(subscription);
-        log.info("📍 Trip used: User {} now has {} trips remaining",
-                userId, subscription.getRemainingTrips() == null ? "unlimited" : subscription.getRemainingTrips());
+    private void invalidateEntitlementAfterCommit(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateEntitlement(userId);
+                }
+            });
+        } else {
+            invalidateEntitlement(userId);
+        }
     }
 
     /**
@@ -160,6 +231,7 @@ public class SubscriptionService {
 
         subscription.setIsActive(false);
         subscription = subscriptionRepository.save(subscription);
+        invalidateEntitlementAfterCommit(userId);
         log.info("❌ Subscription cancelled: User {} cancelled subscription {}", userId, subscriptionId);
 
         return SubscriptionResponseDTO.fromEntity(subscription);
@@ -197,21 +269,6 @@ public class SubscriptionService {
                 .build();
     }
 
-    /**
-     * Deactivate expired subscriptions (can be called by a scheduled task)
-     */
-    @Transactional
-    public int deactivateExpiredSubscriptions() {
-        List<Subscription> expired = subscriptionRepository.findExpiredActiveSubscriptions(LocalDateTime.now());
-        for (Subscription sub : expired) {
-            sub.setIsActive(false);
-            subscriptionRepository.save(sub);
-            log.info("⏰ Subscription expired: User {} subscription {} deactivated",
-                    sub.getUser().getId(), sub.getId());
-        }
-        return expired.size();
-    }
-
     // ============ ADMIN METHODS ============
 
     /**
@@ -262,6 +319,33 @@ public class SubscriptionService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * What a user's active subscription still allows (tripLimit null = unlimited)
+     */
+    @lombok.Getter
+    @lombok.AllArgsConstructor
+    public static class Entitlement {
+        public static final Entitlement NONE = new Entitlement(null, null, 0, LocalDateTime.MIN);
+
+        private final Long subscriptionId;
+        private final Integer tripLimit;
+        private final int tripsUsed;
+        private final LocalDateTime endDate;
+
+        static Entitlement fromEntity(Subscription subscription) {
+            return new Entitlement(subscription.getId(), subscription.getTripLimit(),
+                    subscription.getTripsUsed(), subscription.getEndDate());
+        }
+
+        public boolean allowsTrip(LocalDateTime now) {
+            return this != NONE && now.isBefore(endDate) && (tripLimit == null || tripsUsed < tripLimit);
+        }
+
+        Entitlement withTripUsed() {
+            return new Entitlement(subscriptionId, tripLimit, tripsUsed + 1, endDate);
+        }
+    }
+
     // Inner DTO for status
     @lombok.Data
     @lombok.Builder
@@ -0,0 +1,146 @@
+package com.safra.safra.service;
+
+import com.safra.safra.event.TripLifecycleEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Side effects of time-driven trip transitions, done once per batch.
+ *
+ * Database side effects (request cancellation, outbox notifications) run before commit,
+ * in the transaction that changed the trips. In-memory state (search index, live
+ * location store and streams) is only touched after commit.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TripLifecycleListener {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationService notificationService;
+    private final OpenTripIndex openTripIndex;
+    private final DriverLocationStore driverLocationStore;
+    private final DriverLocationStreamService locationStreamService;
+    private final TripTrackService tripTrackService;
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void beforeCommit(TripLifecycleEvent event) {
+        List<Long> tripIds = event.getTripIds();
+        switch (event.getTransition()) {
+            case EXPIRED -> {
+                int cancelled = cancelRideRequests(tripIds);
+                for (TripRecipients trip : loadRecipients(tripIds).values()) {
+                    notificationService.queueTripNotification("TRIP_EXPIRED", trip.tripId, List.of(trip.driverId),
+                            "⌛ Trip Expired",
+                            "Your trip scheduled for " + formatTime(trip.startTime) + " was cancelled because it never started",
+                            false, "#F44336");
+                    notificationService.queueTripNotification("TRIP_CANCELLED", trip.tripId, trip.passengerIds,
+                            "❌ Trip Cancelled",
+                            String.format("Your ride with %s did not start and has been cancelled", trip.driverName),
+                            true, "#F44336");
+                }
+                log.debug("Expired {} trips, cancelled {} ride requests", tripIds.size(), cancelled);
+            }
+            case START_DUE -> {
+                for (TripRecipients trip : loadRecipients(tripIds).values()) {
+                    notificationService.queueTripNotification("TRIP_START_DUE", trip.tripId, List.of(trip.driverId),
+                            "🚗 Time to go!",
+                            "Your trip is due to start now - open the app to start navigation",
+                            true, "#FF9800");
+                }
+            }
+            case AUTO_COMPLETED -> {
+                // Written here: repository writes after commit would not be committed
+                tripIds.forEach(tripTrackService::flush);
+                for (TripRecipients trip : loadRecipients(tripIds).values()) {
+                    // Same type as endNavigation, so a trip is never rated twice
+                    notificationService.queueTripNotification("RATE_TRIP", trip.tripId, trip.passengerIds,
+                            "⭐ Rate Your Trip",
+                            String.format("How was your ride with %s?", trip.driverName),
+                            false, "#673AB7");
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void afterCommit(TripLifecycleEvent event) {
+        for (Long tripId : event.getTripIds()) {
+            switch (event.getTransition()) {
+                case EXPIRED -> openTripIndex.remove(tripId);
+                case AUTO_COMPLETED -> {
+                    driverLocationStore.evict(tripId);
+                    locationStreamService.complete(tripId);
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Driver and passengers of every trip, with two queries for the whole batch
+     */
+    private Map<Long, TripRecipients> loadRecipients(List<Long> tripIds) {
+        Map<Long, TripRecipients> trips = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT t.id, t.start_time, t.driver_id, d.name AS driver_name " +
+                        "FROM trips t JOIN users d ON d.id = t.driver_id WHERE t.id IN (" + placeholders(tripIds) + ")",
+                rs -> {
+                    TripRecipients trip = new TripRecipients(
+                            rs.getLong("id"),
+                            rs.getTimestamp("start_time").toLocalDateTime(),
+                            rs.getLong("driver_id"),
+                            rs.getString("driver_name"));
+                    trips.put(trip.tripId, trip);
+                },
+                tripIds.toArray());
+        jdbcTemplate.query("SELECT trip_id, user_id FROM trip_passengers WHERE trip_id IN (" + placeholders(tripIds) + ")",
+                rs -> {
+                    TripRecipients trip = trips.get(rs.getLong("trip_id"));
+                    if (trip != null) trip.passengerIds.add(rs.getLong("user_id"));
+                },
+                tripIds.toArray());
+        return trips;
+    }
+
+    private int cancelRideRequests(List<Long> tripIds) {
+        return jdbcTemplate.update(
+                "UPDATE ride_requests SET status = 'CANCELLED', updated_at = now() " +
+                        "WHERE trip_id IN (" + placeholders(tripIds) + ") AND status IN ('PENDING', 'ACCEPTED')",
+                tripIds.toArray());
+    }
+
+    private static String placeholders(List<Long> ids) {
+        return String.join(",", Collections.nCopies(ids.size(), "?"));
+    }
+
+    private static String formatTime(LocalDateTime dateTime) {
+        return dateTime.format(java.time.format.DateTimeFormatter.ofPattern("MM/dd 'at' h:mma"));
+    }
+
+    private static class TripRecipients {
+        private final Long tripId;
+        private final LocalDateTime startTime;
+        private final Long driverId;
+        private final String driverName;
+        private final List<Long> passengerIds = new ArrayList<>();
+
+        TripRecipients(Long tripId, LocalDateTime startTime, Long driverId, String driverName) {
+            this.tripId = tripId;
+            this.startTime = startTime;
+            this.driverId = driverId;
+            this.driverName = driverName;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.safra.safra.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queues trip reminders at configurable offsets before departure (default 24h, 1h, 10 min).
+ *
+ * Each offset owns the window (now + next smaller offset + margin, now + offset], so a
+ * trip gets at most one reminder per offset and a trip created late only gets the
+ * reminders whose window it is still in. The margin (poll interval + grace) skips an
+ * offset when the next smaller one is due right after it: a trip created 61 minutes
+ * before departure gets the 1-hour reminder only, not the 24-hour one a minute earlier. Due trips are claimed with FOR UPDATE SKIP LOCKED on the
+ * (status, start_time) index, marked in trip_reminders and queued in the notification
+ * outbox in one transaction, so several nodes can run the sweep concurrently.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TripReminderService {
+
+    private static final String CLAIM_SQL = "SELECT t.id, t.start_time, t.driver_id, d.name AS driver_name " +
+            "FROM trips t JOIN users d ON d.id = t.driver_id " +
+            "WHERE t.status IN ('OPEN', 'SCHEDULED') AND t.start_time > ? AND t.start_time <= ? " +
+            "AND NOT EXISTS (SELECT 1 FROM trip_reminders r WHERE r.trip_id = t.id AND r.offset_minutes = ?) " +
+            "ORDER BY t.start_time LIMIT ? " +
+            "FOR UPDATE OF t SKIP LOCKED";
+
+    private static final String MARK_SQL = "INSERT INTO trip_reminders (trip_id, offset_minutes, sent_at) " +
+            "VALUES (?, ?, now()) ON CONFLICT (trip_id, offset_minutes) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationService notificationService;
+
+    @Value("${trips.reminders.offsets-minutes:1440,60,10}")
+    private int[] offsetsMinutes;
+
+    @Value("${trips.reminders.batch-size:500}")
+    private int batchSize;
+
+    @Value("${trips.reminders.poll-interval-ms:60000}")
+    private long pollIntervalMs;
+
+    @Value("${trips.reminders.skip-grace-minutes:5}")
+    private int skipGraceMinutes;
+
+    @Scheduled(fixedDelayString = "${trips.reminders.poll-interval-ms:60000}")
+    public void queueDueReminders() {
+        int[] offsets = Arrays.stream(offsetsMinutes).sorted().toArray();
+        int margin = (int) Math.ceil(pollIntervalMs / 60_000.0) + skipGraceMinutes;
+        for (int i = 0; i < offsets.length; i++) {
+            int lowerBound = i == 0 ? 0 : offsets[i - 1] + margin;
+            if (lowerBound >= offsets[i]) continue;
+            try {
+                int queued;
+                int total = 0;
+                do {
+                    queued = queueBatch(offsets[i], lowerBound);
+                    total += queued;
+                } while (queued == batchSize);
+                if (total > 0) {
+                    log.info("⏰ Queued {}-minute reminders for {} trips", offsets[i], total);
+                }
+            } catch (Exception e) {
+                log.error("Failed to queue {}-minute trip reminders: {}", offsets[i], e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Claim, mark and queue one batch of trips for an offset. Returns the number of trips claimed.
+     */
+    private int queueBatch(int offsetMinutes, int lowerBoundMinutes) {
+        Integer claimed = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            Map<Long, DueTrip> dueTrips = new LinkedHashMap<>();
+            jdbcTemplate.query(CLAIM_SQL, rs -> {
+                        DueTrip trip = new DueTrip(
+                                rs.getLong("id"),
+                                rs.getTimestamp("start_time").toLocalDateTime(),
+                                rs.getLong("driver_id"),
+                                rs.getString("driver_name"));
+                        dueTrips.put(trip.tripId, trip);
+                    },
+                    Timestamp.valueOf(now.plusMinutes(lowerBoundMinutes)),
+                    Timestamp.valueOf(now.plusMinutes(offsetMinutes)),
+                    offsetMinutes,
+                    batchSize);
+            if (dueTrips.isEmpty()) return 0;
+
+            // Passengers of every claimed trip in one query
+            String placeholders = String.join(",", Collections.nCopies(dueTrips.size(), "?"));
+            jdbcTemplate.query("SELECT trip_id, user_id FROM trip_passengers WHERE trip_id IN (" + placeholders + ")",
+                    rs -> { dueTrips.get(rs.getLong("trip_id")).passengerIds.add(rs.getLong("user_id")); },
+                    dueTrips.keySet().toArray());
+
+            jdbcTemplate.batchUpdate(MARK_SQL, dueTrips.keySet().stream()
+                    .map(tripId -> new Object[]{tripId, offsetMinutes})
+                    .toList());
+
+            for (DueTrip trip : dueTrips.values()) {
+                notificationService.queueTripReminder(trip.tripId, trip.startTime, trip.driverId, trip.driverName,
+                        trip.passengerIds, offsetMinutes);
+            }
+            return dueTrips.size();
+        });
+        return claimed == null ? 0 : claimed;
+    }
+
+    private static class DueTrip {
+        private final Long tripId;
+        private final LocalDateTime startTime;
+        private final Long driverId;
+        private final String driverName;
+        private final List<Long> passengerIds = new ArrayList<>();
+
+        DueTrip(Long tripId, LocalDateTime startTime, Long driverId, String driverName) {
+            this.tripId = tripId;
+            this.startTime = startTime;
+            this.driverId = driverId;
+            this.driverName = driverName;
+        }
+    }
+}
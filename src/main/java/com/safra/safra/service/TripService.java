@@ -2,15 +2,17 @@ package com.safra.safra.service;
 
 import com.safra.safra.dto.DriverLocationUpdateDTO;
 import com.safra.safra.dto.TripRequestDTO;
+import com.safra.safra.dto.TripSearchPageDTO;
+import com.safra.safra.dto.TripSearchResultDTO;
 import com.safra.safra.entity.RequestStatus;
 import com.safra.safra.entity.RideRequest;
 import com.safra.safra.entity.Trip;
 import com.safra.safra.entity.User;
-import com.safra.safra.config.OSRMConfig;
 import com.safra.safra.repository.RideRequestRepository;
 import com.safra.safra.repository.SubscriptionRepository;
 import com.safra.safra.repository.TripRepository;
 import com.safra.safra.repository.UserRepository;
+import com.safra.safra.security.UserSecurity;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.locationtech.jts.geom.Coordinate;
@@ -18,11 +20,15 @@ import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Point;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,9 +40,16 @@ public class TripService {
     private final TripRepository tripRepository;
     private final UserRepository userRepository;
     private final RideRequestRepository rideRequestRepository;
-    private final OSRMConfig osrmConfig;
+    private final OSRMClient osrmClient;
     private NotificationService notificationService;
     private final SubscriptionService subscriptionService;
+    private final OpenTripIndex openTripIndex;
+    private final DriverLocationStreamService locationStreamService;
+    private final DriverLocationStore driverLocationStore;
+    private final TripTrackService tripTrackService;
+    private final UserSecurity userSecurity;
+    private final SeatReservationService seatReservationService;
+    private final RideRequestService rideRequestService;
     // Add this setter injection method
     @Autowired
     @Lazy
@@ -51,7 +64,7 @@ public class TripService {
     }
 
     public Optional<Trip> getTripById(Long id) {
-        return tripRepository.findById(id);
+        return tripRepository.findDetailedById(id);
     }
 
     /**
@@ -59,16 +72,14 @@ public class TripService {
      */
     @Transactional
     public Trip createTrip(TripRequestDTO dto) {
-        // First, verify the driver has a valid subscription
-        if (!subscriptionService.canUserCreateTrip(dto.getDriverId())) {
-            throw new RuntimeException("You need an active subscription with remaining trips to create a trip. Please purchase or renew your subscription.");
-        }
+        // Use one trip from the subscription first: a single conditional UPDATE that
+        // also proves the driver exists and holds a valid subscription
+        subscriptionService.useTrip(dto.getDriverId());
 
         Trip trip = new Trip();
 
-        // Set driver
-        trip.setDriver(userRepository.findById(dto.getDriverId())
-                .orElseThrow(() -> new RuntimeException("Driver not found")));
+        // Set driver (no need to load it, only the foreign key is written)
+        trip.setDriver(userRepository.getReferenceById(dto.getDriverId()));
 
         // Set passengers
         List<User> passengers = userRepository.findAllById(dto.getPassengerIds());
@@ -88,17 +99,18 @@ public class TripService {
         trip.setPrice(dto.getPrice());
         trip.setStatus(dto.getStatus());
 
-        // Use one trip from the subscription
-        subscriptionService.useTrip(dto.getDriverId());
-
         // Save and return the trip
-        return tripRepository.save(trip);
+        Trip saved = tripRepository.save(trip);
+        openTripIndex.onTripChanged(saved.getId());
+        return saved;
     }
 
     public void deleteTrip(Long id) {
         tripRepository.deleteById(id);
+        openTripIndex.remove(id);
     }
 
+    @Transactional
     public Trip updateTrip(TripRequestDTO dto) {
         Trip trip = tripRepository.findById(dto.getId())
                 .orElseThrow(() -> new RuntimeException("Trip not found"));
@@ -108,6 +120,9 @@ public class TripService {
             User driver = userRepository.findById(dto.getDriverId())
                     .orElseThrow(() -> new RuntimeException("Driver not found"));
             trip.setDriver(driver);
+            // Evicting earlier would let a concurrent check cache the old driver again
+            Long tripId = trip.getId();
+            runAfterCommit(() -> userSecurity.evictTrip(tripId));
         }
 
         // If needed, update passengers
@@ -129,7 +144,11 @@ public class TripService {
         trip.setPrice(dto.getPrice());
         trip.setStatus(dto.getStatus());
 
-        return tripRepository.save(trip);
+        Trip saved = tripRepository.save(trip);
+        // The seat column is not written by save (see SeatReservationService)
+        seatReservationService.setAvailableSeats(saved.getId(), dto.getAvailableSeats());
+        openTripIndex.onTripChanged(saved.getId());
+        return saved;
     }
 
     public Trip setTripArchiveStatus(Long tripId, Boolean archived) {
@@ -146,26 +165,19 @@ public class TripService {
         return trip.getPassengers();
     }
 
+    @Transactional
     public void removePassengerFromTrip(Long tripId, Long passengerId) {
-        Trip trip = tripRepository.findById(tripId)
-                .orElseThrow(() -> new RuntimeException("Trip not found"));
-
-        // Find the passenger
-        User passenger = trip.getPassengers().stream()
-                .filter(p -> p.getId().equals(passengerId))
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("Passenger not found in this trip"));
-
-        // Remove passenger
-        trip.getPassengers().remove(passenger);
-
-        // Free the seat
-        trip.setAvailableSeats(trip.getAvailableSeats() + 1);
-
-        // Persist changes
-        tripRepository.save(trip);
+        if (!tripRepository.existsById(tripId)) {
+            throw new RuntimeException("Trip not found");
+        }
+        // Removes the trip_passengers row and frees the seat atomically
+        if (!seatReservationService.releaseSeat(tripId, passengerId)) {
+            throw new RuntimeException("Passenger not found in this trip");
+        }
+        rideRequestRepository.cancelAcceptedRequest(tripId, passengerId);
     }
 
+    @Transactional
     public Trip cancelTrip(Long tripId, Long driverId) {
         Trip trip = tripRepository.findById(tripId)
                 .orElseThrow(() -> new RuntimeException("Trip not found"));
@@ -185,53 +197,160 @@ public class TripService {
         }
 
         rideRequestRepository.saveAll(requests);
+        rideRequestService.evictPendingCountAfterCommit(driverId);
         User driver = trip.getDriver();
 
         // Add null check for notificationService
         if (notificationService != null) {
-            // Notify all passengers
-            for (User passenger : trip.getPassengers()) {
-                notificationService.sendTripCancellation(passenger, trip, false);
-            }
-
-            // Notify driver
-            notificationService.sendTripCancellation(driver, trip, true);
+            // Queued with the cancellation, delivered after commit
+            notificationService.sendTripCancellation(trip, List.copyOf(trip.getPassengers()), driver);
         } else {
             log.warn("NotificationService is null, skipping notifications");
         }
 
-        return tripRepository.save(trip);
+        Trip saved = tripRepository.save(trip);
+        tripRepository.clearDriverLocation(tripId);
+        openTripIndex.remove(tripId);
+        driverLocationStore.evict(tripId);
+        locationStreamService.complete(tripId);
+        return saved;
     }
 
+    @Transactional
     public Trip removePassenger(Long tripId, Long passengerId) {
-        Trip trip = tripRepository.findById(tripId)
-                .orElseThrow(() -> new RuntimeException("Trip not found"));
-
-        User passenger = userRepository.findById(passengerId)
-                .orElseThrow(() -> new RuntimeException("Passenger not found"));
-
-        if (!trip.getPassengers().contains(passenger)) {
+        if (!tripRepository.existsById(tripId)) {
+            throw new RuntimeException("Trip not found");
+        }
+        if (!seatReservationService.releaseSeat(tripId, passengerId)) {
             throw new RuntimeException("Passenger not part of this trip");
         }
-
-        trip.getPassengers().remove(passenger);
-        trip.setAvailableSeats(trip.getAvailableSeats() + 1);
-
-        return tripRepository.save(trip);
+        rideRequestRepository.cancelAcceptedRequest(tripId, passengerId);
+        return tripRepository.findById(tripId)
+                .orElseThrow(() -> new RuntimeException("Trip not found"));
     }
 
     public List<Trip> findTripsWithinDistance(double startLat, double startLng,
                                               double endLat, double endLng) {
+        // Answer from memory once the index is built; the database query is the fallback
+        if (openTripIndex.isReady()) {
+            return openTripIndex.search(startLat, startLng, endLat, endLng).stream()
+                    .map(OpenTripIndex.SearchHit::getTrip)
+                    .toList();
+        }
         return tripRepository.findTripsWithinDistance(
                 startLat, startLng,
                 endLat, endLng );
     }
 
+    /**
+     * Keyset-paginated passenger search returning flat DTOs instead of Trip graphs.
+     * Served from the in-memory index when it is ready, from a projection query otherwise.
+     * Later pages stay on the path of their cursor, whose distances they are compared to.
+     */
+    public TripSearchPageDTO searchTripsPage(double startLat, double startLng,
+                                             double endLat, double endLng,
+                                             String cursor, int limit) {
+        TripSearchPageDTO.Cursor after = TripSearchPageDTO.Cursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(limit, 100));
+
+        // A database cursor keeps paging from the database even once the index is ready;
+        // an index cursor can only land on the database on a node whose index is still loading
+        boolean fromIndex = openTripIndex.isReady() && !TripSearchPageDTO.Cursor.DATABASE.equals(after.getSource());
+        List<TripSearchResultDTO> rows;
+        if (fromIndex) {
+            Double desiredAzimuth = azimuthDegrees(startLng, startLat, endLng, endLat);
+            rows = openTripIndex.search(startLat, startLng, endLat, endLng).stream()
+                    .filter(hit -> isAfter(hit, after))
+                    .sorted(Comparator.comparingInt(OpenTripIndex.SearchHit::getTier)
+                            .thenComparingDouble(hit -> hit.getStartDistance() + hit.getEndDistance())
+                            .thenComparingLong(hit -> hit.getTrip().getId()))
+                    .limit(pageSize + 1L)
+                    .map(hit -> toSearchResult(hit, desiredAzimuth))
+                    .toList();
+        } else {
+            rows = tripRepository.searchTripsPage(
+                            startLat, startLng, endLat, endLng,
+                            after.getTier(), after.getTotalDistance(), after.getTripId(),
+                            pageSize + 1).stream()
+                    .map(TripSearchResultDTO::fromProjection)
+                    .toList();
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<TripSearchResultDTO> page = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            TripSearchResultDTO last = page.get(page.size() - 1);
+            nextCursor = new TripSearchPageDTO.Cursor(
+                    tierOf(last.getStartDistanceM(), last.getEndDistanceM()),
+                    last.getStartDistanceM() + last.getEndDistanceM(),
+                    last.getTripId(),
+                    fromIndex ? TripSearchPageDTO.Cursor.INDEX : TripSearchPageDTO.Cursor.DATABASE).encode();
+        }
+
+        // Cursor is computed from exact distances; round only what is sent back
+        page.forEach(TripSearchResultDTO::roundDistances);
+
+        return TripSearchPageDTO.builder()
+                .results(page)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private boolean isAfter(OpenTripIndex.SearchHit hit, TripSearchPageDTO.Cursor cursor) {
+        if (hit.getTier() != cursor.getTier()) return hit.getTier() > cursor.getTier();
+        double total = hit.getStartDistance() + hit.getEndDistance();
+        if (total != cursor.getTotalDistance()) return total > cursor.getTotalDistance();
+        return hit.getTrip().getId() > cursor.getTripId();
+    }
+
+    private TripSearchResultDTO toSearchResult(OpenTripIndex.SearchHit hit, Double desiredAzimuth) {
+        Trip trip = hit.getTrip();
+        User driver = trip.getDriver();
+        double[] start = getCoordinatesFromPoint(trip.getStartLocation());
+        double[] end = getCoordinatesFromPoint(trip.getEndLocation());
+        Double tripAzimuth = azimuthDegrees(start[0], start[1], end[0], end[1]);
+
+        return TripSearchResultDTO.builder()
+                .tripId(trip.getId())
+                .startLat(start[1])
+                .startLng(start[0])
+                .endLat(end[1])
+                .endLng(end[0])
+                .startTime(trip.getStartTime())
+                .availableSeats(trip.getAvailableSeats())
+                .price(trip.getPrice())
+                .driverId(driver.getId())
+                .driverName(driver.getName())
+                .driverRating(driver.getAverageRating())
+                .startDistanceM(hit.getStartDistance())
+                .endDistanceM(hit.getEndDistance())
+                .directionDiffDegrees(desiredAzimuth == null || tripAzimuth == null ? null
+                        : Math.round(Math.abs(desiredAzimuth - tripAzimuth) * 10.0) / 10.0)
+                .build();
+    }
+
+    // Same tiers as the search query: both ends within 2 km, one end, neither
+    private int tierOf(double startDistance, double endDistance) {
+        if (startDistance <= 2000 && endDistance <= 2000) return 1;
+        if (startDistance <= 2000 || endDistance <= 2000) return 2;
+        return 3;
+    }
+
+    // Planar azimuth in degrees, clockwise from north - matches degrees(ST_Azimuth(geometry, geometry))
+    private Double azimuthDegrees(double fromLng, double fromLat, double toLng, double toLat) {
+        if (fromLng == toLng && fromLat == toLat) return null;
+        double degrees = Math.toDegrees(Math.atan2(toLng - fromLng, toLat - fromLat));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+
     // Add this method for NotificationService
     public List<Trip> getTripsStartingBetween(LocalDateTime startTime, LocalDateTime endTime) {
         return tripRepository.findByStartTimeBetween(startTime, endTime);
     }
 
+    @Transactional
     public Trip updateTripStatus(Long tripId, String status) {
         Trip trip = tripRepository.findById(tripId)
                 .orElseThrow(() -> new RuntimeException("Trip not found"));
@@ -243,29 +362,70 @@ public class TripService {
         }
 
         trip.setStatus(status.toUpperCase());
-        return tripRepository.save(trip);
+        Trip saved = tripRepository.save(trip);
+        openTripIndex.onTripChanged(tripId);
+        if (Trip.Status.COMPLETED.equals(saved.getStatus()) || Trip.Status.CANCELED.equals(saved.getStatus())) {
+            // The navigation columns are not written by save (see Trip)
+            tripRepository.clearDriverLocation(tripId);
+        }
+        if (!"ACTIVE".equals(saved.getStatus())) {
+            // Pings skip the status check for tracked trips, so stop tracking once this commits
+            runAfterCommit(() -> driverLocationStore.evict(tripId));
+        }
+        return saved;
     }
 
-    public Trip updateDriverLocation(Long tripId, Double lat, Double lng,
-                                     Double speed, Float bearing, Float accuracy) {
-        Trip trip = tripRepository.findById(tripId)
-                .orElseThrow(() -> new RuntimeException("Trip not found"));
-
-        // Check if trip is active
-        if (!"ACTIVE".equals(trip.getStatus())) {
-            throw new RuntimeException("Cannot update location for non-active trip");
+    /**
+     * Record a GPS ping. Only the in-memory store is updated here; the trips row is
+     * written by DriverLocationStore's periodic batch flush.
+     */
+    public DriverLocationUpdateDTO updateDriverLocation(Long tripId, Double lat, Double lng,
+                                                        Double speed, Float bearing, Float accuracy) {
+        // Trips already in the store are known to be ACTIVE - skip the status lookup
+        if (!driverLocationStore.isTracked(tripId)) {
+            String status = tripRepository.findStatusById(tripId)
+                    .orElseThrow(() -> new RuntimeException("Trip not found"));
+
+            // Check if trip is active
+            if (!"ACTIVE".equals(status)) {
+                throw new RuntimeException("Cannot update location for non-active trip");
+            }
         }
 
-        trip.setCurrentDriverLat(lat);
-        trip.setCurrentDriverLng(lng);
-        trip.setDriverSpeed(speed);
-        trip.setDriverBearing(bearing);
-        trip.setLastLocationUpdate(LocalDateTime.now());
+        DriverLocationUpdateDTO location = new DriverLocationUpdateDTO();
+        location.setTripId(tripId);
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setSpeed(speed);
+        location.setBearing(bearing);
+        location.setAccuracy(accuracy);
+        location.setTimestamp(LocalDateTime.now());
+
+        driverLocationStore.update(location);
+        tripTrackService.append(location);
+        locationStreamService.publish(tripId, location);
+        return location;
+    }
 
-        return tripRepository.save(trip);
+    /**
+     * Open a Server-Sent Events stream of driver locations for a trip
+     */
+    public SseEmitter streamDriverLocation(Long tripId) {
+        DriverLocationUpdateDTO current = null;
+        try {
+            current = getDriverLocation(tripId);
+        } catch (RuntimeException e) {
+            // No location yet - the stream starts with the next update
+        }
+        return locationStreamService.subscribe(tripId, current);
     }
 
     public DriverLocationUpdateDTO getDriverLocation(Long tripId) {
+        Optional<DriverLocationUpdateDTO> latest = driverLocationStore.get(tripId);
+        if (latest.isPresent()) {
+            return latest.get();
+        }
+
         Trip trip = tripRepository.findById(tripId)
                 .orElseThrow(() -> new RuntimeException("Trip not found"));
 
@@ -273,7 +433,12 @@ public class TripService {
             throw new RuntimeException("Driver location not available");
         }
 
+        return toLocationDTO(trip);
+    }
+
+    private DriverLocationUpdateDTO toLocationDTO(Trip trip) {
         DriverLocationUpdateDTO location = new DriverLocationUpdateDTO();
+        location.setTripId(trip.getId());
         location.setLatitude(trip.getCurrentDriverLat());
         location.setLongitude(trip.getCurrentDriverLng());
         location.setSpeed(trip.getDriverSpeed());
@@ -283,6 +448,17 @@ public class TripService {
         return location;
     }
 
+    /**
+     * Write the recorded GPS track of a trip as GeoJSON
+     */
+    public void writeTripTrack(Long tripId, OutputStream out) throws IOException {
+        tripTrackService.writeGeoJson(tripId, out);
+    }
+
+    public boolean existsById(Long tripId) {
+        return tripRepository.existsById(tripId);
+    }
+
     public Trip startNavigation(Long tripId) {
         Trip trip = tripRepository.findById(tripId)
                 .orElseThrow(() -> new RuntimeException("Trip not found"));
@@ -291,32 +467,57 @@ public class TripService {
         // (You might want to add authentication/authorization here)
 
         trip.setStatus("ACTIVE");
-        return tripRepository.save(trip);
+        Trip saved = tripRepository.save(trip);
+        openTripIndex.remove(tripId);
+        return saved;
+    }
+
+    /**
+     * Latest locations of all ACTIVE trips, straight from the in-memory store
+     */
+    public List<DriverLocationUpdateDTO> getActiveTripLocations() {
+        return List.copyOf(driverLocationStore.getAll());
     }
 
+    @Transactional
     public Trip endNavigation(Long tripId) {
         Trip trip = tripRepository.findById(tripId)
                 .orElseThrow(() -> new RuntimeException("Trip not found"));
 
+        // Write the last pending ping, then stop tracking the trip
+        driverLocationStore.flush(tripId);
+        driverLocationStore.evict(tripId);
+        tripTrackService.flush(tripId);
+
         trip.setStatus("COMPLETED");
 
         // Clear navigation data
-        trip.setCurrentDriverLat(null);
-        trip.setCurrentDriverLng(null);
-        trip.setDriverSpeed(null);
-        trip.setDriverBearing(null);
-        trip.setLastLocationUpdate(null);
+        tripRepository.clearDriverLocation(tripId);
 
         // After trip completion - add null check
         if (notificationService != null) {
-            for (User passenger : trip.getPassengers()) {
-                notificationService.sendRatingRequest(passenger, trip);
-            }
+            notificationService.sendRatingRequests(trip, List.copyOf(trip.getPassengers()));
         } else {
             log.warn("NotificationService is null, skipping rating requests");
         }
 
-        return tripRepository.save(trip);
+        Trip saved = tripRepository.save(trip);
+        openTripIndex.remove(tripId);
+        locationStreamService.complete(tripId);
+        return saved;
+    }
+
+    private static void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 
     // Helper method to get coordinates from Point
@@ -334,32 +535,11 @@ public class TripService {
             double[] startCoords = getCoordinatesFromPoint(trip.getStartLocation());
             double[] endCoords = getCoordinatesFromPoint(trip.getEndLocation());
 
-            // Use configuration property
-            String osrmUrl = String.format(
-                    "%s/route/v1/driving/%f,%f;%f,%f?overview=full&geometries=geojson&steps=true",
-                    osrmConfig.getBaseUrl(),
-                    startCoords[0], startCoords[1],  // lng, lat
-                    endCoords[0], endCoords[1]       // lng, lat
-            );
-
-            // Create RestTemplate with configured timeouts
-            SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-            requestFactory.setConnectTimeout(osrmConfig.getConnectTimeout());
-            requestFactory.setReadTimeout(osrmConfig.getReadTimeout());
-
-            RestTemplate restTemplate = new RestTemplate(requestFactory);
-            return restTemplate.getForObject(osrmUrl, String.class);
+            // JTS coordinates are (lng, lat)
+            return osrmClient.getRoute(startCoords[1], startCoords[0], endCoords[1], endCoords[0]);
 
         } catch (Exception e) {
             throw new RuntimeException("Failed to fetch route from OSRM: " + e.getMessage());
         }
     }
-
-    // Add this helper method to TripService:
-    private RestTemplate createRestTemplateWithTimeout() {
-        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        requestFactory.setConnectTimeout(osrmConfig.getConnectTimeout());
-        requestFactory.setReadTimeout(osrmConfig.getReadTimeout());
-        return new RestTemplate(requestFactory);
-    }
-}
\ No newline at end of file
+}
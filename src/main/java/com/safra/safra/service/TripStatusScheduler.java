@@ -1,30 +1,114 @@
 package com.safra.safra.service;
 
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
+import com.safra.safra.event.TripLifecycleEvent;
+import com.safra.safra.event.TripLifecycleEvent.Transition;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.List;
 
+/**
+ * Time-driven trip transitions:
+ * - OPEN trips not departed 15 minutes after start time are CANCELED
+ * - SCHEDULED trips reaching their start time trigger a "start your trip" reminder
+ * - ACTIVE trips without a location ping for too long are COMPLETED
+ *
+ * Each transition works in bounded batches; rows are claimed with FOR UPDATE SKIP LOCKED
+ * so every node can run the scheduler without double processing. Side effects
+ * (request cancellation, notifications, in-memory caches) are handled per batch by
+ * TripLifecycleListener through a TripLifecycleEvent.
+ */
 @Service
+@RequiredArgsConstructor
+@Slf4j
 public class TripStatusScheduler {
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    private static final String EXPIRE_SQL = "UPDATE trips SET status = 'CANCELED' " +
+            "WHERE id IN (SELECT id FROM trips WHERE status = 'OPEN' AND start_time < ? " +
+            "  ORDER BY start_time LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id";
+
+    // offset 0 in trip_reminders marks the start reminder, the unique key makes it exactly-once;
+    // trips that became due longer ago than the reminder window are not reminded any more
+    private static final String START_DUE_SQL = "INSERT INTO trip_reminders (trip_id, offset_minutes, sent_at) " +
+            "SELECT t.id, 0, now() FROM trips t WHERE t.status = 'SCHEDULED' AND t.start_time <= ? AND t.start_time > ? " +
+            "AND NOT EXISTS (SELECT 1 FROM trip_reminders r WHERE r.trip_id = t.id AND r.offset_minutes = 0) " +
+            "ORDER BY t.start_time LIMIT ? " +
+            "ON CONFLICT (trip_id, offset_minutes) DO NOTHING " +
+            "RETURNING trip_id";
+
+    private static final String AUTO_COMPLETE_SQL = "UPDATE trips SET status = 'COMPLETED', " +
+            "current_driver_lat = NULL, current_driver_lng = NULL, driver_speed = NULL, driver_bearing = NULL, " +
+            "last_location_update = NULL " +
+            "WHERE id IN (SELECT id FROM trips WHERE status = 'ACTIVE' " +
+            "  AND COALESCE(last_location_update, start_time) < ? " +
+            "  ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OpenTripIndex openTripIndex;
+
+    @Value("${trips.lifecycle.expiry-grace-minutes:15}")
+    private int expiryGraceMinutes;
+
+    @Value("${trips.lifecycle.stale-active-minutes:120}")
+    private int staleActiveMinutes;
+
+    @Value("${trips.lifecycle.start-reminder-window-minutes:60}")
+    private int startReminderWindowMinutes;
+
+    @Value("${trips.lifecycle.batch-size:500}")
+    private int batchSize;
+
+    // Upper bound of batches per transition and run, the next run picks up the rest
+    @Value("${trips.lifecycle.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
 
     @Scheduled(cron = "0 * * * * *") // runs every minute
-    @Transactional
-    public void cancelExpiredTrips() {
-        // 15-minute grace period
-        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(15);
-        int updated = entityManager.createQuery(
-                "UPDATE Trip t SET t.status = 'CANCELLED' " +
-                        "WHERE t.status = 'OPEN' AND t.startTime < :cutoff"
-        ).setParameter("cutoff",cutoff).executeUpdate();
-
-        System.out.println("Cancelled " + updated + " trips past grace period at " + LocalDateTime.now());
+    public void runTransitions() {
+        LocalDateTime now = LocalDateTime.now();
+        run(Transition.EXPIRED, EXPIRE_SQL, now.minusMinutes(expiryGraceMinutes));
+        // Trips expired by another node are claimed there; drop them from this node's index too
+        openTripIndex.removeStartedBefore(now.minusMinutes(expiryGraceMinutes));
+        run(Transition.START_DUE, START_DUE_SQL, now, now.minusMinutes(startReminderWindowMinutes));
+        run(Transition.AUTO_COMPLETED, AUTO_COMPLETE_SQL, now.minusMinutes(staleActiveMinutes));
     }
 
+    private void run(Transition transition, String sql, LocalDateTime... cutoffs) {
+        Object[] args = new Object[cutoffs.length + 1];
+        for (int i = 0; i < cutoffs.length; i++) {
+            args[i] = Timestamp.valueOf(cutoffs[i]);
+        }
+        args[cutoffs.length] = batchSize;
+
+        int total = 0;
+        try {
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                Integer processed = transactionTemplate.execute(status -> {
+                    List<Long> tripIds = jdbcTemplate.queryForList(sql, Long.class, args);
+                    if (!tripIds.isEmpty()) {
+                        eventPublisher.publishEvent(new TripLifecycleEvent(transition, tripIds));
+                    }
+                    return tripIds.size();
+                });
+                total += processed == null ? 0 : processed;
+                if (processed == null || processed < batchSize) break;
+            }
+        } catch (Exception e) {
+            log.error("Trip transition {} failed: {}", transition, e.getMessage());
+        }
+        if (total > 0) {
+            log.info("🔁 Trip transition {}: {} trips", transition, total);
+        }
+    }
 }
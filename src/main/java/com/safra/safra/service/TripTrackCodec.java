@@ -0,0 +1,120 @@
+package com.safra.safra.service;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compact binary encoding of GPS tracks.
+ *
+ * Each point is (epoch millis, latitude, longitude) with coordinates quantized to
+ * 1e-5 degrees (about 1.1 m). The first point of a segment is stored as absolute
+ * values, every following point as deltas from the previous one. Each value is
+ * zigzag-encoded (small negative deltas stay small) and written as a varint. At a
+ * 1-2 s ping interval a point typically takes 4-6 bytes.
+ */
+final class TripTrackCodec {
+
+    static final double SCALE = 100_000.0;
+
+    private TripTrackCodec() {
+    }
+
+    interface PointConsumer {
+        void accept(long epochMillis, double latitude, double longitude);
+    }
+
+    /**
+     * Appends points to one segment. Not thread-safe; callers synchronize per trip.
+     */
+    static class Encoder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        private long lastTime;
+        private long lastLat;
+        private long lastLng;
+        private int pointCount;
+
+        void append(long epochMillis, double latitude, double longitude) {
+            long lat = Math.round(latitude * SCALE);
+            long lng = Math.round(longitude * SCALE);
+            if (pointCount == 0) {
+                writeVarLong(out, zigzag(epochMillis));
+                writeVarLong(out, zigzag(lat));
+                writeVarLong(out, zigzag(lng));
+            } else {
+                writeVarLong(out, zigzag(epochMillis - lastTime));
+                writeVarLong(out, zigzag(lat - lastLat));
+                writeVarLong(out, zigzag(lng - lastLng));
+            }
+            lastTime = epochMillis;
+            lastLat = lat;
+            lastLng = lng;
+            pointCount++;
+        }
+
+        int getPointCount() {
+            return pointCount;
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    static void decode(byte[] data, PointConsumer consumer) {
+        int[] position = {0};
+        long time = 0;
+        long lat = 0;
+        long lng = 0;
+        boolean first = true;
+        while (position[0] < data.length) {
+            long t = unzigzag(readVarLong(data, position));
+            long la = unzigzag(readVarLong(data, position));
+            long ln = unzigzag(readVarLong(data, position));
+            if (first) {
+                time = t;
+                lat = la;
+                lng = ln;
+                first = false;
+            } else {
+                time += t;
+                lat += la;
+                lng += ln;
+            }
+            consumer.accept(time, lat / SCALE, lng / SCALE);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] data, int[] position) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            if (position[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated track segment");
+            }
+            byte b = data[position[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IllegalArgumentException("Malformed varint in track segment");
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.safra.safra.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safra.safra.dto.DriverLocationUpdateDTO;
+import com.safra.safra.entity.TripTrackSegment;
+import com.safra.safra.repository.TripTrackSegmentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records the full GPS track of each trip.
+ *
+ * Pings are appended to an in-memory segment per trip (delta + varint encoded, see
+ * TripTrackCodec). Open segments are written as one row per trip and time window on
+ * every flush interval, and immediately when navigation ends. Segments whose write
+ * failed are kept and retried on the next flush.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TripTrackService {
+
+    private final TripTrackSegmentRepository segmentRepository;
+    private final ObjectMapper objectMapper;
+
+    private final Map<Long, OpenSegment> openSegments = new ConcurrentHashMap<>();
+    // Sealed segments not persisted yet (their last write failed)
+    private final Queue<TripTrackSegment> unsaved = new ConcurrentLinkedQueue<>();
+
+    public void append(DriverLocationUpdateDTO location) {
+        if (location.getLatitude() == null || location.getLongitude() == null) return;
+
+        LocalDateTime timestamp = location.getTimestamp() != null ? location.getTimestamp() : LocalDateTime.now();
+        // Appending inside compute() is atomic with seal()'s remove(): a ping either lands
+        // in the segment being sealed or in a new one, never in a removed segment
+        openSegments.compute(location.getTripId(), (id, segment) -> {
+            OpenSegment target = segment != null ? segment : new OpenSegment();
+            synchronized (target) {
+                target.append(timestamp, location.getLatitude(), location.getLongitude());
+            }
+            return target;
+        });
+    }
+
+    /**
+     * Seal every open segment into its own row (one blob per trip per window)
+     */
+    @Scheduled(fixedDelayString = "${trips.track.flush-interval-ms:60000}")
+    public void flush() {
+        List<TripTrackSegment> sealed = new ArrayList<>();
+        for (TripTrackSegment retry; (retry = unsaved.poll()) != null; ) {
+            sealed.add(retry);
+        }
+        for (Long tripId : List.copyOf(openSegments.keySet())) {
+            TripTrackSegment segment = seal(tripId);
+            if (segment != null) {
+                sealed.add(segment);
+            }
+        }
+        if (!sealed.isEmpty()) {
+            save(sealed);
+        }
+    }
+
+    /**
+     * Persist what is left of a trip's track (navigation ended)
+     */
+    public void flush(Long tripId) {
+        TripTrackSegment segment = seal(tripId);
+        if (segment != null) {
+            save(List.of(segment));
+        }
+    }
+
+    /**
+     * Write a trip's track as a GeoJSON Feature with a LineString geometry.
+     * Segments are decoded one at a time, so the full track is never held as objects.
+     */
+    public void writeGeoJson(Long tripId, OutputStream out) throws IOException {
+        List<byte[]> blobs = new ArrayList<>();
+        int storedBytes = 0;
+        for (TripTrackSegment segment : segmentRepository.findByTripIdOrderByStartTimeAscIdAsc(tripId)) {
+            blobs.add(segment.getData());
+            storedBytes += segment.getData().length;
+        }
+        List<TripTrackSegment> retrying = unsaved.stream()
+                .filter(segment -> segment.getTripId().equals(tripId))
+                .sorted(Comparator.comparing(TripTrackSegment::getStartTime))
+                .toList();
+        for (TripTrackSegment segment : retrying) {
+            blobs.add(segment.getData());
+            storedBytes += segment.getData().length;
+        }
+        OpenSegment pending = openSegments.get(tripId);
+        if (pending != null) {
+            synchronized (pending) {
+                if (pending.encoder.getPointCount() > 0) {
+                    byte[] data = pending.encoder.toByteArray();
+                    blobs.add(data);
+                    storedBytes += data.length;
+                }
+            }
+        }
+
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("type", "Feature");
+
+            json.writeObjectFieldStart("geometry");
+            json.writeStringField("type", "LineString");
+            json.writeArrayFieldStart("coordinates");
+            int[] pointCount = {0};
+            for (byte[] blob : blobs) {
+                TripTrackCodec.decode(blob, (time, lat, lng) -> {
+                    try {
+                        json.writeStartArray();
+                        json.writeNumber(lng);
+                        json.writeNumber(lat);
+                        json.writeEndArray();
+                        pointCount[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+
+            json.writeObjectFieldStart("properties");
+            json.writeNumberField("tripId", tripId);
+            json.writeNumberField("pointCount", pointCount[0]);
+            json.writeNumberField("storedBytes", storedBytes);
+            json.writeArrayFieldStart("timestamps");
+            for (byte[] blob : blobs) {
+                TripTrackCodec.decode(blob, (time, lat, lng) -> {
+                    try {
+                        json.writeString(Instant.ofEpochMilli(time).toString());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+
+            json.writeEndObject();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void save(List<TripTrackSegment> segments) {
+        try {
+            segmentRepository.saveAll(segments);
+            log.debug("Persisted {} track segments", segments.size());
+        } catch (RuntimeException e) {
+            // The insert was rolled back: drop any id it assigned and retry on the next flush
+            segments.forEach(segment -> segment.setId(null));
+            unsaved.addAll(segments);
+            log.warn("Could not persist {} track segments, will retry: {}", segments.size(), e.getMessage());
+        }
+    }
+
+    private TripTrackSegment seal(Long tripId) {
+        OpenSegment segment = openSegments.remove(tripId);
+        if (segment == null) return null;
+        synchronized (segment) {
+            if (segment.encoder.getPointCount() == 0) return null;
+            return TripTrackSegment.builder()
+                    .tripId(tripId)
+                    .startTime(segment.startTime)
+                    .endTime(segment.endTime)
+                    .pointCount(segment.encoder.getPointCount())
+                    .data(segment.encoder.toByteArray())
+                    .build();
+        }
+    }
+
+    private static class OpenSegment {
+        private final TripTrackCodec.Encoder encoder = new TripTrackCodec.Encoder();
+        private LocalDateTime startTime;
+        private LocalDateTime endTime;
+
+        void append(LocalDateTime timestamp, double lat, double lng) {
+            if (startTime == null) startTime = timestamp;
+            endTime = timestamp;
+            encoder.append(timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), lat, lng);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.safra.safra;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safra.safra.controller.RatingController;
+import com.safra.safra.controller.TripController;
+import com.safra.safra.controller.UserController;
+import com.safra.safra.entity.RequestStatus;
+import com.safra.safra.entity.RideRequest;
+import com.safra.safra.entity.Role;
+import com.safra.safra.entity.Trip;
+import com.safra.safra.entity.TripRating;
+import com.safra.safra.entity.User;
+import com.safra.safra.repository.RideRequestRepository;
+import com.safra.safra.repository.TripRatingRepository;
+import com.safra.safra.repository.TripRepository;
+import com.safra.safra.repository.UserRepository;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SQL statements per endpoint, response serialization included (like open-in-view).
+ * The fixture has more trips/requests/ratings than the allowed query count, so an
+ * N+1 on any association of the returned entities fails these tests. Batch fetching
+ * is turned off: it would fold an N+1 into a single extra query and hide it.
+ */
+@SpringBootTest
+@ActiveProfiles("perf")
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.safra.safra.EntityFetchQueryCountTest$QueryCounter",
+        "spring.jpa.properties.hibernate.default_batch_fetch_size=1"
+})
+class EntityFetchQueryCountTest {
+
+    private static final int TRIPS = 4;
+    private static final int PASSENGERS_PER_TRIP = 3;
+    private static final int MAX_QUERIES = 2;
+
+    @Autowired
+    private UserController userController;
+    @Autowired
+    private TripController tripController;
+    @Autowired
+    private RatingController ratingController;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TripRepository tripRepository;
+    @Autowired
+    private RideRequestRepository rideRequestRepository;
+    @Autowired
+    private TripRatingRepository tripRatingRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User driver;
+    private User regular;
+    private final List<User> users = new ArrayList<>();
+    private final List<Trip> trips = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        driver = userRepository.save(testUser("driver"));
+        regular = userRepository.save(testUser("regular"));
+        users.add(driver);
+        users.add(regular);
+
+        GeometryFactory geometryFactory = new GeometryFactory();
+        for (int t = 0; t < TRIPS; t++) {
+            List<User> passengers = new ArrayList<>();
+            for (int p = 0; p < PASSENGERS_PER_TRIP; p++) {
+                passengers.add(userRepository.save(testUser("passenger" + t + "-" + p)));
+            }
+            users.addAll(passengers);
+
+            Trip newTrip = new Trip();
+            newTrip.setDriver(driver);
+            newTrip.setPassengers(passengers);
+            newTrip.setStartLocation(geometryFactory.createPoint(new Coordinate(10.18, 36.80)));
+            newTrip.setEndLocation(geometryFactory.createPoint(new Coordinate(10.64, 35.83)));
+            newTrip.setStartTime(LocalDateTime.now().plusDays(3));
+            newTrip.setAvailableSeats(1);
+            newTrip.setPrice(12f);
+            newTrip.setStatus(Trip.Status.OPEN);
+            Trip trip = tripRepository.save(newTrip);
+            trips.add(trip);
+
+            rideRequestRepository.save(RideRequest.builder()
+                    .trip(trip)
+                    .passenger(regular)
+                    .status(RequestStatus.PENDING)
+                    .createdAt(LocalDateTime.now())
+                    .updatedAt(LocalDateTime.now())
+                    .build());
+            tripRatingRepository.save(TripRating.builder()
+                    .trip(trip)
+                    .passenger(passengers.get(0))
+                    .rating(5)
+                    .build());
+        }
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "admin", null, List.of(new SimpleGrantedAuthority("ROLE_ADMIN"))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        String tripList = String.join(",", trips.stream().map(trip -> String.valueOf(trip.getId())).toList());
+        String userList = String.join(",", users.stream().map(user -> String.valueOf(user.getId())).toList());
+        jdbcTemplate.update("DELETE FROM trip_ratings WHERE trip_id IN (" + tripList + ")");
+        jdbcTemplate.update("DELETE FROM ride_requests WHERE trip_id IN (" + tripList + ")");
+        jdbcTemplate.update("DELETE FROM trip_passengers WHERE trip_id IN (" + tripList + ")");
+        jdbcTemplate.update("DELETE FROM trips WHERE id IN (" + tripList + ")");
+        jdbcTemplate.update("DELETE FROM users WHERE id IN (" + userList + ")");
+        users.clear();
+        trips.clear();
+    }
+
+    @Test
+    void driverTrips() {
+        assertBounded("GET /api/users/trips/{id}", () -> userController.getUserTrips(driver.getId()));
+    }
+
+    @Test
+    void tripById() {
+        assertBounded("GET /trips/{id}", () -> tripController.getTrip(trips.get(0).getId()));
+    }
+
+    @Test
+    void driverRideRequests() {
+        assertBounded("GET /api/users/driver/{driverId}/requests",
+                () -> userController.getDriverRideRequests(driver.getId()));
+    }
+
+    @Test
+    void passengerRideRequests() {
+        assertBounded("GET /api/users/passenger/{passengerId}/requests",
+                () -> userController.getPassengerRideRequests(regular.getId()));
+    }
+
+    @Test
+    void driverInbox() {
+        assertBounded("GET /api/users/driver/{driverId}/requests/inbox",
+                () -> userController.getDriverInbox(driver.getId(), null, null, 20));
+    }
+
+    @Test
+    void driverRatings() {
+        assertBounded("GET /api/ratings/driver/{driverId}", () -> ratingController.getDriverRatings(driver.getId()));
+    }
+
+    /**
+     * Run the endpoint and serialize its body in one session, counting every statement
+     */
+    private void assertBounded(String endpoint, Supplier<Object> call) {
+        long queries = new TransactionTemplate(transactionManager).execute(status -> {
+            QueryCounter.reset();
+            Object result = call.get();
+            Object body = result instanceof ResponseEntity<?> response ? response.getBody() : result;
+            try {
+                objectMapper.writeValueAsString(body);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+            return QueryCounter.count();
+        });
+        assertTrue(queries <= MAX_QUERIES, endpoint + " ran " + queries + " queries (max " + MAX_QUERIES + ")");
+    }
+
+    private static User testUser(String name) {
+        return User.builder()
+                .name(name)
+                .email(name + "-" + UUID.randomUUID() + "@query-count.test")
+                .password("x")
+                .role(Role.CLIENT)
+                .isBanned(false)
+                .joinDate(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * Counts the statements Hibernate prepares on the current thread (background
+     * jobs running in the same context do not interfere)
+     */
+    public static class QueryCounter implements StatementInspector {
+        private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+        @Override
+        public String inspect(String sql) {
+            COUNT.get()[0]++;
+            return sql;
+        }
+
+        static void reset() {
+            COUNT.get()[0] = 0;
+        }
+
+        static long count() {
+            return COUNT.get()[0];
+        }
+    }
+}
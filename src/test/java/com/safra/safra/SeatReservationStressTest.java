@@ -0,0 +1,209 @@
+package com.safra.safra;
+
+import com.safra.safra.entity.RequestStatus;
+import com.safra.safra.entity.RideRequest;
+import com.safra.safra.entity.Role;
+import com.safra.safra.entity.Trip;
+import com.safra.safra.entity.User;
+import com.safra.safra.repository.RideRequestRepository;
+import com.safra.safra.repository.TripRepository;
+import com.safra.safra.repository.UserRepository;
+import com.safra.safra.service.RideRequestService;
+import com.safra.safra.service.SeatReservationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many concurrent accepts (and holds) competing for the few seats of one trip:
+ * exactly the number of seats must be booked, never more.
+ */
+@SpringBootTest
+class SeatReservationStressTest {
+
+    private static final int SEATS = 3;
+    private static final int PASSENGERS = 60;
+    private static final int THREADS = 24;
+
+    @Autowired
+    private RideRequestService rideRequestService;
+    @Autowired
+    private SeatReservationService seatReservationService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TripRepository tripRepository;
+    @Autowired
+    private RideRequestRepository rideRequestRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Trip trip;
+    private final List<User> users = new ArrayList<>();
+    private final List<RideRequest> requests = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        User driver = userRepository.save(testUser("driver"));
+        users.add(driver);
+
+        GeometryFactory geometryFactory = new GeometryFactory();
+        Trip newTrip = new Trip();
+        newTrip.setDriver(driver);
+        newTrip.setStartLocation(geometryFactory.createPoint(new Coordinate(10.18, 36.80)));
+        newTrip.setEndLocation(geometryFactory.createPoint(new Coordinate(10.64, 35.83)));
+        newTrip.setStartTime(LocalDateTime.now().plusDays(3));
+        newTrip.setAvailableSeats(SEATS);
+        newTrip.setPrice(12f);
+        newTrip.setStatus(Trip.Status.OPEN);
+        trip = tripRepository.save(newTrip);
+
+        for (int i = 0; i < PASSENGERS; i++) {
+            User passenger = userRepository.save(testUser("passenger" + i));
+            users.add(passenger);
+            requests.add(rideRequestRepository.save(RideRequest.builder()
+                    .trip(trip)
+                    .passenger(passenger)
+                    .status(RequestStatus.PENDING)
+                    .createdAt(LocalDateTime.now())
+                    .updatedAt(LocalDateTime.now())
+                    .build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        List<Long> userIds = users.stream().map(User::getId).toList();
+        String userList = String.join(",", userIds.stream().map(String::valueOf).toList());
+        jdbcTemplate.update("DELETE FROM notification_outbox WHERE recipient_id IN (" + userList + ")");
+        jdbcTemplate.update("DELETE FROM seat_holds WHERE trip_id = ?", trip.getId());
+        jdbcTemplate.update("DELETE FROM trip_passengers WHERE trip_id = ?", trip.getId());
+        jdbcTemplate.update("DELETE FROM ride_requests WHERE trip_id = ?", trip.getId());
+        jdbcTemplate.update("DELETE FROM trips WHERE id = ?", trip.getId());
+        jdbcTemplate.update("DELETE FROM users WHERE id IN (" + userList + ")");
+        users.clear();
+        requests.clear();
+    }
+
+    @Test
+    void concurrentAcceptsNeverOverbook() throws InterruptedException {
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger full = new AtomicInteger();
+        Queue<String> unexpected = new ConcurrentLinkedQueue<>();
+
+        runConcurrently(requests.size(), i -> {
+            try {
+                rideRequestService.acceptRideRequest(requests.get(i).getId());
+                accepted.incrementAndGet();
+            } catch (RuntimeException e) {
+                if ("No available seats".equals(e.getMessage())) {
+                    full.incrementAndGet();
+                } else {
+                    unexpected.add(e.getMessage());
+                }
+            }
+        });
+
+        assertTrue(unexpected.isEmpty(), "Unexpected failures: " + unexpected);
+        assertEquals(SEATS, accepted.get());
+        assertEquals(PASSENGERS - SEATS, full.get());
+        assertEquals(0, availableSeats());
+        assertEquals(SEATS, passengerRows());
+        assertEquals(SEATS, count("SELECT count(*) FROM ride_requests WHERE trip_id = ? AND status = 'ACCEPTED'"));
+    }
+
+    @Test
+    void concurrentHoldsAndAcceptsNeverOverbook() throws InterruptedException {
+        AtomicInteger held = new AtomicInteger();
+        runConcurrently(PASSENGERS, i -> {
+            try {
+                seatReservationService.hold(trip.getId(), users.get(i + 1).getId(), 5);
+                held.incrementAndGet();
+            } catch (RuntimeException e) {
+                // trip full
+            }
+        });
+        assertEquals(SEATS, held.get());
+        assertEquals(0, availableSeats());
+
+        // Every request is accepted concurrently: only the holders can get a seat
+        AtomicInteger accepted = new AtomicInteger();
+        runConcurrently(requests.size(), i -> {
+            try {
+                rideRequestService.acceptRideRequest(requests.get(i).getId());
+                accepted.incrementAndGet();
+            } catch (RuntimeException e) {
+                // trip full
+            }
+        });
+
+        assertEquals(SEATS, accepted.get());
+        assertEquals(0, availableSeats());
+        assertEquals(SEATS, passengerRows());
+        assertEquals(0, count("SELECT count(*) FROM seat_holds WHERE trip_id = ?"));
+    }
+
+    private void runConcurrently(int tasks, IntConsumer task) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < tasks; i++) {
+            int index = i;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    task.accept(index);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS), "Stress run timed out");
+    }
+
+    private int availableSeats() {
+        return count("SELECT available_seats FROM trips WHERE id = ?");
+    }
+
+    private int passengerRows() {
+        return count("SELECT count(*) FROM trip_passengers WHERE trip_id = ?");
+    }
+
+    private int count(String sql) {
+        Integer value = jdbcTemplate.queryForObject(sql, Integer.class, trip.getId());
+        return value == null ? 0 : value;
+    }
+
+    private static User testUser(String name) {
+        return User.builder()
+                .name(name)
+                .email(name + "-" + UUID.randomUUID() + "@stress.test")
+                .password("x")
+                .role(Role.CLIENT)
+                .isBanned(false)
+                .joinDate(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,99 @@
+package com.safra.safra.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Encode/decode round trips of GPS track segments
+ */
+class TripTrackCodecTest {
+
+    @Test
+    void roundTripKeepsTimesAndQuantizedCoordinates() {
+        long start = 1_760_000_000_000L;
+        double[][] points = {
+                {36.80649, 10.18153},
+                {36.80661, 10.18170},   // small positive deltas
+                {36.80655, 10.18101},   // negative deltas (zigzag)
+                {-33.92487, 18.42406},  // large jump, other hemisphere
+                {-33.92487, -179.99999},
+                {89.99999, 179.99999}
+        };
+        long[] times = {start, start + 1_000, start + 1_500, start + 3_600_000, start + 3_600_000, start - 5_000};
+
+        TripTrackCodec.Encoder encoder = new TripTrackCodec.Encoder();
+        for (int i = 0; i < points.length; i++) {
+            encoder.append(times[i], points[i][0], points[i][1]);
+        }
+        assertEquals(points.length, encoder.getPointCount());
+
+        List<long[]> decoded = decode(encoder.toByteArray());
+        assertEquals(points.length, decoded.size());
+        for (int i = 0; i < points.length; i++) {
+            assertArrayEquals(new long[]{
+                    times[i],
+                    Math.round(points[i][0] * TripTrackCodec.SCALE),
+                    Math.round(points[i][1] * TripTrackCodec.SCALE)
+            }, decoded.get(i), "point " + i);
+        }
+    }
+
+    @Test
+    void quantizesToAboutOneMetre() {
+        TripTrackCodec.Encoder encoder = new TripTrackCodec.Encoder();
+        encoder.append(0, 36.806494, 10.181536);
+
+        double[] point = new double[2];
+        TripTrackCodec.decode(encoder.toByteArray(), (time, lat, lng) -> {
+            point[0] = lat;
+            point[1] = lng;
+        });
+        assertEquals(36.80649, point[0], 1e-9);
+        assertEquals(10.18154, point[1], 1e-9);
+    }
+
+    @Test
+    void consecutivePingsStayCompact() {
+        TripTrackCodec.Encoder encoder = new TripTrackCodec.Encoder();
+        encoder.append(1_760_000_000_000L, 36.80649, 10.18153);
+        int firstPoint = encoder.toByteArray().length;
+        for (int i = 1; i <= 100; i++) {
+            encoder.append(1_760_000_000_000L + i * 1_000L, 36.80649 + i * 0.00010, 10.18153 - i * 0.00008);
+        }
+        int perPoint = (encoder.toByteArray().length - firstPoint) / 100;
+        assertTrue(perPoint <= 6, "delta points take " + perPoint + " bytes");
+    }
+
+    @Test
+    void emptySegmentDecodesToNothing() {
+        assertEquals(0, decode(new byte[0]).size());
+    }
+
+    @Test
+    void truncatedSegmentIsRejected() {
+        TripTrackCodec.Encoder encoder = new TripTrackCodec.Encoder();
+        encoder.append(1_760_000_000_000L, 36.80649, 10.18153);
+        byte[] data = encoder.toByteArray();
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        assertThrows(IllegalArgumentException.class, () -> decode(truncated));
+    }
+
+    private static List<long[]> decode(byte[] data) {
+        List<long[]> points = new ArrayList<>();
+        TripTrackCodec.decode(data, (time, lat, lng) -> points.add(new long[]{
+                time,
+                Math.round(lat * TripTrackCodec.SCALE),
+                Math.round(lng * TripTrackCodec.SCALE)
+        }));
+        return points;
+    }
+}